@@ -0,0 +1,75 @@
+package org.example.virtual_device.bean;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.services.CommunicationService;
+import org.example.virtual_device.services.EventLog;
+import org.example.virtual_device.services.FleetEngine;
+import org.example.virtual_device.services.FleetMetrics;
+import org.example.virtual_device.services.RouteService;
+import org.example.virtual_device.services.SensorRegistry;
+import org.example.virtual_device.services.StubTransport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// what one sensor tick costs the simulator, from reading the route to handing bytes to a local stub sink
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FleetTickBenchmark {
+
+    @Param({"10000"})
+    int sensors;
+
+    private FleetEngine fleetEngine;
+    private Sensor[] fleet;
+
+    // a thread ticks only its own slice of the fleet, like the scheduler never ticks one sensor on two threads at once
+    @State(Scope.Thread)
+    public static class Cursor {
+        int first;
+        int end;
+        int next;
+
+        @Setup
+        public void pickSlice(FleetTickBenchmark benchmark, ThreadParams threads) {
+            int size = benchmark.fleet.length;
+            first = (int) ((long) size * threads.getThreadIndex() / threads.getThreadCount());
+            end = (int) ((long) size * (threads.getThreadIndex() + 1) / threads.getThreadCount());
+            next = first;
+        }
+    }
+
+    @Setup
+    public void createFleet() {
+        FleetMetrics metrics = new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry());
+        EventLog eventLog = new EventLog();
+        fleetEngine = new FleetEngine(new CommunicationService(new StubTransport(), metrics, eventLog),
+                new RouteService(List.of("zagrepcanka-filozofski.txt"), List.of(), eventLog), metrics, eventLog);
+        fleet = new Sensor[sensors];
+        for (int i = 0; i < sensors; i++) {
+            fleet[i] = new Sensor("dev-" + i, fleetEngine);
+            // the speed and send interval of a started sensor, without the fleet clock ticking it as well
+            fleet[i].prepareRun();
+            // half of the fleet is armed and moving, so half of the payloads carry coordinates
+            if (i % 2 == 0) {
+                fleet[i].armed = true;
+                fleet[i].motionDetected = true;
+            }
+        }
+    }
+
+    @TearDown
+    public void shutdown() {
+        fleetEngine.shutdown();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void tick(Cursor cursor) {
+        fleet[cursor.next].tick();
+        cursor.next = cursor.next + 1 == cursor.end ? cursor.first : cursor.next + 1;
+    }
+}
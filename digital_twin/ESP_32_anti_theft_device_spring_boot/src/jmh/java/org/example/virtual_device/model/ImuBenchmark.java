@@ -0,0 +1,45 @@
+package org.example.virtual_device.model;
+
+import org.example.virtual_device.UserVariables;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// what a sensor's synthetic IMU costs per sample, one operation is a tick's worth of samples at 100 Hz every 5 s
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImuBenchmark {
+
+    private static final long TICK_NANOS = 5_000_000_000L;
+
+    private SyntheticImu resting;
+    private SyntheticImu moving;
+    private long now;
+
+    @Setup
+    public void createImus() {
+        resting = new SyntheticImu(100, UserVariables.accelThresholdG, new SplittableRandom(1));
+        moving = new SyntheticImu(100, UserVariables.accelThresholdG, new SplittableRandom(2));
+        resting.advance(0);
+        moving.advance(0);
+        moving.startMovement(0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(500)
+    public double restingTick() {
+        now += TICK_NANOS;
+        resting.advance(now);
+        return resting.getWindowRms();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(500)
+    public double movingTick() {
+        now += TICK_NANOS;
+        moving.advance(now);
+        return moving.getWindowRms();
+    }
+}
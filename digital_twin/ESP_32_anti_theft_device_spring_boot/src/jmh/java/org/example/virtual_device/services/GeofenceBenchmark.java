@@ -0,0 +1,87 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.Geofence;
+import org.example.virtual_device.model.GeofenceIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// positions checked against safe zones scattered over a city, through the grid index and by testing every zone
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeofenceBenchmark {
+
+    private static final int POSITIONS = 4096; // power of two
+
+    @Param({"100", "10000"})
+    int zones;
+
+    private List<Geofence> zoneList;
+    private GeofenceIndex index;
+    private GeofenceEngine engine;
+    private final double[] latitudes = new double[POSITIONS];
+    private final double[] longitudes = new double[POSITIONS];
+    private final String[] tokens = new String[POSITIONS];
+    private int next;
+
+    @Setup
+    public void createZones() {
+        SplittableRandom random = new SplittableRandom(1);
+        zoneList = new ArrayList<>(zones);
+        // circles of 50 to 500 m and hexagons up to 1 km across, around 20 by 20 km of Zagreb
+        for (int i = 0; i < zones; i++) {
+            double latitude = 45.7 + 0.18 * random.nextDouble();
+            double longitude = 15.85 + 0.26 * random.nextDouble();
+            if (i % 2 == 0) {
+                zoneList.add(Geofence.circle("zone-" + i, latitude, longitude, 50 + 450 * random.nextDouble()));
+            } else {
+                double radius = 0.001 + 0.004 * random.nextDouble();
+                double[] cornerLatitudes = new double[6];
+                double[] cornerLongitudes = new double[6];
+                for (int corner = 0; corner < 6; corner++) {
+                    cornerLatitudes[corner] = latitude + radius * Math.sin(corner * Math.PI / 3);
+                    cornerLongitudes[corner] = longitude + radius * 1.43 * Math.cos(corner * Math.PI / 3);
+                }
+                zoneList.add(Geofence.polygon("zone-" + i, cornerLatitudes, cornerLongitudes));
+            }
+        }
+        index = new GeofenceIndex(zoneList, UserVariables.geofenceCellDegrees, UserVariables.geofenceMaxCells);
+        engine = new GeofenceEngine(index, new SimpleMeterRegistry(), alert -> {
+        }, new EventLog());
+        for (int i = 0; i < POSITIONS; i++) {
+            latitudes[i] = 45.7 + 0.18 * random.nextDouble();
+            longitudes[i] = 15.85 + 0.26 * random.nextDouble();
+            tokens[i] = "dev-" + i % 1000;
+        }
+    }
+
+    @Benchmark
+    public int indexFind() {
+        int i = next++ & (POSITIONS - 1);
+        return index.find(latitudes[i], longitudes[i]);
+    }
+
+    // what every position would cost without the index
+    @Benchmark
+    public int scanAllZones() {
+        int i = next++ & (POSITIONS - 1);
+        for (int zone = 0; zone < zoneList.size(); zone++) {
+            if (zoneList.get(zone).contains(latitudes[i], longitudes[i]))
+                return zone;
+        }
+        return -1;
+    }
+
+    // one armed and moving sensor's reading through the stage, 1000 sensors jumping between random positions
+    @Benchmark
+    public void engineAccept() {
+        int i = next++ & (POSITIONS - 1);
+        engine.accept(tokens[i], TelemetryEncoder.ALL_FIELDS, i, latitudes[i], longitudes[i], true, true);
+    }
+}
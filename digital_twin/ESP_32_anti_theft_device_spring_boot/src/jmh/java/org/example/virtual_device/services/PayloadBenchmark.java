@@ -0,0 +1,44 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PayloadBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TelemetryBuffer buffer = new TelemetryBuffer(256);
+    private double latitude = 45.799331;
+
+    @Benchmark
+    public TelemetryBuffer encodeValues() {
+        return TelemetryEncoder.encodeValues(buffer.reset(), latitude, 15.963002, true, true);
+    }
+
+    @Benchmark
+    public TelemetryBuffer encodeReading() {
+        return TelemetryEncoder.encodeReading(buffer.reset(), 1_700_000_000_000L, latitude, 15.963002, true, true);
+    }
+
+    // how payloads were built before TelemetryEncoder, kept as the reference the encoder is measured against
+    @Benchmark
+    public byte[] mapPayloadWithJackson() throws JsonProcessingException {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("motion_detected", true);
+        payload.put("gyro_x", 12.3);
+        payload.put("gyro_y", -4.5);
+        payload.put("gyro_z", 0.8);
+        payload.put("armed", true);
+        payload.put("latitude", latitude);
+        payload.put("longitude", 15.963002);
+        return objectMapper.writeValueAsBytes(payload);
+    }
+}
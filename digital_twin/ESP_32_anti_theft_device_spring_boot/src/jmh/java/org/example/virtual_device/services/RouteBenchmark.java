@@ -0,0 +1,44 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.Route;
+import org.example.virtual_device.model.RouteCursor;
+import org.example.virtual_device.model.RouteEnd;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteBenchmark {
+
+    private final RouteService routeService = new RouteService(UserVariables.routeFileNames, List.of(), new EventLog());
+    private final String fileName = UserVariables.routeFileNames.get(0);
+
+    // what every sensor registration and reset paid before routes were shared
+    @Benchmark
+    public Route parseRoute() {
+        return RouteService.loadRoute(fileName);
+    }
+
+    @Benchmark
+    public RouteCursor newCursor() {
+        return routeService.newCursor(ThreadLocalRandom.current(), RouteEnd.LOOP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(42)
+    public double driveRoute() {
+        RouteCursor cursor = routeService.newCursor(ThreadLocalRandom.current(), RouteEnd.LOOP);
+        double sum = 0;
+        for (int i = 0; i < 42; i++) {
+            sum += cursor.getLatitude() + cursor.getLongitude();
+            // one second at 30 km/h
+            cursor.advance(8.33);
+        }
+        return sum;
+    }
+}
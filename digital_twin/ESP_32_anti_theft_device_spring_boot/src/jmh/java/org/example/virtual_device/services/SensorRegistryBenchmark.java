@@ -0,0 +1,73 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.bean.Sensor;
+import org.example.virtual_device.model.SensorState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// registry operations of many API threads at once, against a fleet of started sensors
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class SensorRegistryBenchmark {
+
+    @Param({"10000"})
+    int sensors;
+
+    private FleetEngine fleetEngine;
+    private SensorRegistry sensorRegistry;
+    private SensorService sensorService;
+    private String[] tokens;
+
+    @Setup
+    public void registerFleet() {
+        sensorRegistry = new SensorRegistry();
+        FleetMetrics metrics = new FleetMetrics(new SimpleMeterRegistry(), sensorRegistry);
+        EventLog eventLog = new EventLog();
+        fleetEngine = new FleetEngine(new CommunicationService(new StubTransport(), metrics, eventLog),
+                new RouteService(List.of("zagrepcanka-filozofski.txt"), List.of(), eventLog), metrics, eventLog);
+        sensorService = new SensorService(fleetEngine, sensorRegistry, eventLog);
+        tokens = new String[sensors];
+        for (int i = 0; i < sensors; i++) {
+            tokens[i] = "dev-" + i;
+            sensorService.registerSensor(tokens[i]);
+        }
+    }
+
+    @TearDown
+    public void shutdown() {
+        fleetEngine.shutdown();
+    }
+
+    @Benchmark
+    public Sensor lookup() {
+        return sensorRegistry.get(randomToken());
+    }
+
+    @Benchmark
+    public boolean registerTaken() {
+        return sensorService.registerSensor(randomToken());
+    }
+
+    @Benchmark
+    public boolean armAndDisarm() {
+        String token = randomToken();
+        return sensorService.armSensor(token) & sensorService.disarmSensor(token);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Map<SensorState, Integer> countByState() {
+        return sensorRegistry.countByState();
+    }
+
+    private String randomToken() {
+        return tokens[ThreadLocalRandom.current().nextInt(tokens.length)];
+    }
+}
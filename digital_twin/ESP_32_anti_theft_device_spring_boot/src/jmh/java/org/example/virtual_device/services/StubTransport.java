@@ -0,0 +1,24 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// local sink for benchmarks, takes the encoded bytes like a real transport and discards them
+public class StubTransport implements TelemetryTransport {
+
+    public final LongAdder bytes = new LongAdder();
+
+    @Override
+    public void send(DeviceChannel device, TelemetryBuffer payload) {
+        bytes.add(payload.getLength());
+        device.release(payload);
+    }
+
+    @Override
+    public void sendBatch(TelemetryBuffer batch, int readings, Runnable release) {
+        bytes.add(batch.getLength());
+        release.run();
+    }
+}
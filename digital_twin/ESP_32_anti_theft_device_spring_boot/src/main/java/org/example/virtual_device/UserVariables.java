@@ -7,8 +7,53 @@ public class UserVariables {
     public static final int minWakeupTime = 15; // minimum time until sensor starts moving
     public static final int maxWakeupTime = 20; // maximum time until sensor starts moving
     public static final int delayBetweenSending = 5; // time between sending next location
+    public static final double speedKmh = 30; // speed of a moving sensor along its route, like the firmware's DIST_PER_STEP_KM
+    public static final double speedVariation = 0.2; // each sensor drives at speedKmh times 1 +- up to this
+    public static final String routeEnd = "reverse"; // at the end of its route a sensor does "stop", "loop" or "reverse"
+    public static final int fleetThreads = 4; // scheduler threads shared by all sensors, independent of fleet size
+    public static final double imuSampleRateHz = 100; // samples per second of each sensor's synthetic MPU6050, 0 turns it off (constant gyro, motion straight from the wake-up)
+    public static final double accelThresholdG = 1.85; // like ACCEL_THRESHOLD in the firmware, accel magnitude that sets off the alert
+    public static final boolean reportByException = false; // send only what changed since the last reading, and everything once per heartbeat
+    public static final double reportDistanceMeters = 25; // with reportByException, how far an alarmed sensor moves before its location is sent again
+    public static final int heartbeatSeconds = 60; // with reportByException, longest time between two full readings of a sensor
+    public static final double timeCompression = 1; // 1 is real time, 60 simulates a minute per second, 0 as fast as possible (readings then carry simulated timestamps)
+    public static final long randomSeed = 0; // seed of all sensors' random choices, 0 draws a new one every run
+    public static final int virtualMaxInFlight = 1000; // as fast as possible waits while this many sends are unanswered
+    public static final int bulkThreads = 8; // threads applying /fleet bulk operations
+    public static final int bulkChunkSize = 1000; // sensors handled and streamed back together by one bulk thread
+    public static final int bulkMaxTokens = 1_000_000; // largest cohort of one /fleet request
     public static final List<String> routeFileNames = List.of("zagrepcanka-filozofski.txt"); // if used with .jar st
+    public static final List<String> externalRouteFiles = List.of(); // paths of .txt, .csv or .gpx route datasets outside the jar, memory mapped and streamed
+    public static final boolean embeddedSink = false; // send telemetry to this app's own /api/v1 endpoints instead of the platform, like --twin.sink=true
+    public static final int sinkReadingsPerDevice = 120; // newest readings per device the embedded sink keeps, /sink/<token>/telemetry returns them
+    public static final double geofenceCellDegrees = 0.01; // grid cell of the geofence index, about 1 km, zones are looked up in the cell of a position
+    public static final int geofenceMaxCells = 1 << 20; // cells get larger when the zones of a scenario would need more
     public static final String platformAPIURL = "http://161.53.133.253:8080/api/v1/ly664l9nremjfdcvklw1/telemetry"; // api to which to send sensor data to
+    public static final String transport = "http"; // "http", "mqtt" (one connection per sensor, like the firmware) or "mqtt-gateway" (all sensors over one connection)
+    public static final String mqttBrokerURL = "tcp://161.53.133.253:1883"; // broker used by the mqtt transports
+    public static final int mqttQos = 1; // QoS of telemetry, RPC subscriptions and RPC responses
+    public static final int mqttMaxInflight = 1000; // unacknowledged QoS 1 messages per MQTT connection
+    public static final int connectTimeoutMillis = 2000; // give up connecting to the platform after this long
+    public static final int readTimeoutMillis = 5000; // give up waiting for the platform response after this long
+    public static final int maxInFlightPerSensor = 2; // at most 31, further readings of a sensor are dropped while this many posts are unanswered
+    public static final int httpThreads = 4; // threads completing telemetry responses
+    public static final boolean batchingEnabled = false; // send readings of many sensors together to platformBatchAPIURL instead of one post per reading
+    public static final String platformBatchAPIURL = "http://161.53.133.253:8080/api/v1/gateway/telemetry"; // api accepting {token: [{ts, values}]} batches
+    public static final String gatewayAccessToken = "ly664l9nremjfdcvklw1"; // token batches are sent with
+    public static final int batchMaxSize = 500; // readings per batch, a full batch is sent right away
+    public static final long batchLingerMillis = 200; // longest time a reading waits for its batch to fill up
+    public static final int maxInFlightBatches = 4; // further readings are dropped while this many batches are unanswered
+    public static final boolean spoolEnabled = false; // keep readings the platform did not take (failed or no free buffer) on disk and send them again in order, needs "http" or "mqtt-gateway"
+    public static final String spoolDirectory = "spool"; // memory-mapped segment files of the spool, left over readings are sent after a restart
+    public static final int spoolSegmentBytes = 16 * 1024 * 1024; // size of one segment file
+    public static final long spoolMaxBytes = 256 * 1024 * 1024; // sensors skip ticks once the spool fills its last segment below this
+    public static final double spoolDrainPerSecond = 2000; // catch-up rate in readings per second once the platform answers again
+    public static final int spoolDrainBatchSize = 500; // readings per batch sent from the spool
+    public static final long spoolRetryMillis = 1000; // wait after a batch from the spool failed
+    public static final int logBufferSize = 8192; // power of two, log lines waiting for the console, further lines are counted but not shown
+    public static final int logSamplesPerInterval = 50; // lines shown per kind of event (sent, failed, dropped, ...) in each interval
+    public static final long logIntervalMillis = 5000; // interval after which the console gets a count of the lines it was not shown
+    public static final int consoleMaxLines = 2000; // lines the GUI console keeps, older ones are removed
     // in CommunicationService change JSON key for id, latitude, longitude as needed
     // in SensorController change CrossOrigin depending on port and need
 }
@@ -2,14 +2,28 @@ package org.example.virtual_device;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+import java.awt.*;
+import java.util.stream.Stream;
 
 @SpringBootApplication
 public class VirtualDeviceApplication {
 
     public static void main(String[] args) {
-        System.setProperty("java.awt.headless", "false");
-        SpringApplication.run(VirtualDeviceApplication.class, args);
+        SpringApplication application = new SpringApplication(VirtualDeviceApplication.class);
+        boolean display = !GraphicsEnvironment.isHeadless();
+        application.setHeadless(!display);
+        // scenario runs, replays and machines without a display get the "headless" profile instead of the GUI, the
+        // scenario and replay are looked up once the environment is read, so they may be set wherever Spring takes properties from
+        application.addListeners((ApplicationListener<ApplicationEnvironmentPreparedEvent>) event -> {
+            ConfigurableEnvironment environment = event.getEnvironment();
+            if (!display || Stream.of("twin.scenario", "twin.replay").anyMatch(environment::containsProperty))
+                environment.addActiveProfile("headless");
+        });
+        application.run(args);
     }
 
 }
@@ -1,27 +1,37 @@
 package org.example.virtual_device.bean;
 
 import org.example.virtual_device.model.GUI;
+import org.example.virtual_device.services.EventLog;
+import org.example.virtual_device.services.FleetEngine;
 import org.example.virtual_device.services.SensorService;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
 import javax.swing.*;
 
 @Component
+@Profile("!headless")
 public class GUIInitializer implements ApplicationListener<ApplicationReadyEvent> {
 
     private final SensorService sensorService;
+    private final FleetEngine fleetEngine;
+    private final EventLog eventLog;
 
-    public GUIInitializer(SensorService sensorService) {
+    public GUIInitializer(SensorService sensorService, FleetEngine fleetEngine, EventLog eventLog) {
         this.sensorService = sensorService;
+        this.fleetEngine = fleetEngine;
+        this.eventLog = eventLog;
     }
 
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
         SwingUtilities.invokeLater(() -> {
-            GUI gui = new GUI(sensorService);
+            GUI gui = new GUI(sensorService, eventLog);
             gui.setVisible(true);
+            // a drawn seed is the only way to run the same traffic again, as randomSeed or a scenario's seed
+            eventLog.publish("Fleet seed: " + fleetEngine.getSettings().getSeed(), false);
         });
     }
 }
@@ -0,0 +1,65 @@
+package org.example.virtual_device.bean;
+
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.services.EventLog;
+import org.example.virtual_device.services.FleetMetrics;
+import org.example.virtual_device.services.TelemetryReplayer;
+import org.example.virtual_device.services.TelemetrySink;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+// replays the recording given with --twin.replay (at --twin.replay-speed, 0 as fast as possible), prints a summary and exits
+@Component
+@Profile("headless")
+@ConditionalOnProperty("twin.replay")
+public class ReplayRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final TelemetryReplayer replayer;
+    private final FleetMetrics metrics;
+    private final EventLog eventLog;
+    private final ObjectProvider<TelemetrySink> sink;
+    private final Path recording;
+    private final double speed;
+
+    public ReplayRunner(TelemetryReplayer replayer, FleetMetrics metrics, EventLog eventLog, ObjectProvider<TelemetrySink> sink,
+                        @Value("${twin.replay}") String recording, @Value("${twin.replay-speed:1}") double speed) {
+        this.replayer = replayer;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.sink = sink;
+        this.recording = Path.of(recording);
+        this.speed = speed;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Thread runner = new Thread(() -> {
+            int exitCode = 0;
+            try {
+                eventLog.publish("Replaying " + recording + (speed > 0 ? " at " + speed + "x" : " as fast as possible"), false);
+                long started = System.nanoTime();
+                long sent = replayer.replay(recording, speed);
+                double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+                metrics.awaitResponses(UserVariables.readTimeoutMillis + 1000L);
+                eventLog.publish("Replayed " + sent + " readings in " + String.format("%.1f", elapsedSeconds) + " s", false);
+                metrics.printSummary(eventLog, elapsedSeconds);
+                sink.ifAvailable(telemetrySink -> telemetrySink.printSummary(eventLog));
+            } catch (Exception e) {
+                eventLog.publish("Replay of " + recording + " failed: " + e.getMessage(), true);
+                exitCode = 1;
+            }
+            int code = exitCode;
+            // closing the context stops the event log, which prints what is left
+            System.exit(SpringApplication.exit(event.getApplicationContext(), () -> code));
+        }, "replay");
+        runner.start();
+    }
+}
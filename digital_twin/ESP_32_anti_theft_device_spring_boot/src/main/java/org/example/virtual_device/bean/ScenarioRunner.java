@@ -0,0 +1,168 @@
+package org.example.virtual_device.bean;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.Geofence;
+import org.example.virtual_device.model.GeofenceIndex;
+import org.example.virtual_device.model.Scenario;
+import org.example.virtual_device.services.EventLog;
+import org.example.virtual_device.services.FleetEngine;
+import org.example.virtual_device.services.FleetMetrics;
+import org.example.virtual_device.services.GeofenceAlertWriter;
+import org.example.virtual_device.services.GeofenceEngine;
+import org.example.virtual_device.services.SensorService;
+import org.example.virtual_device.services.TelemetrySink;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+// runs the scenario given with --twin.scenario instead of the GUI, prints a summary and exits
+@Component
+@Profile("headless")
+@ConditionalOnProperty("twin.scenario")
+public class ScenarioRunner implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final SensorService sensorService;
+    private final FleetEngine fleetEngine;
+    private final FleetMetrics metrics;
+    private final EventLog eventLog;
+    private final ObjectProvider<TelemetrySink> sink;
+    private final String scenarioLocation;
+
+    public ScenarioRunner(SensorService sensorService, FleetEngine fleetEngine, FleetMetrics metrics, EventLog eventLog, ObjectProvider<TelemetrySink> sink,
+                          @Value("${twin.scenario}") String scenarioLocation) {
+        this.sensorService = sensorService;
+        this.fleetEngine = fleetEngine;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.sink = sink;
+        this.scenarioLocation = scenarioLocation;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        Scenario scenario = loadScenario(scenarioLocation);
+        Thread runner = new Thread(() -> {
+            int exitCode = 0;
+            try {
+                run(scenario);
+            } catch (Exception e) {
+                eventLog.publish("Scenario " + scenario.getName() + " failed: " + e.getMessage(), true);
+                exitCode = 1;
+            }
+            int code = exitCode;
+            // closing the context stops the event log, which prints what is left
+            System.exit(SpringApplication.exit(event.getApplicationContext(), () -> code));
+        }, "scenario");
+        runner.start();
+    }
+
+    public static Scenario loadScenario(String location) {
+        // plain paths are files, classpath: and file: prefixes work as usual
+        Resource resource = new DefaultResourceLoader().getResource(location.contains(":") ? location : "file:" + location);
+        try (InputStream in = resource.getInputStream()) {
+            Scenario scenario = new ObjectMapper().readValue(in, Scenario.class);
+            scenario.validate();
+            return scenario;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read scenario " + location, e);
+        }
+    }
+
+    private void run(Scenario scenario) throws InterruptedException {
+        if (scenario.getTimeCompression() != null)
+            fleetEngine.setTimeCompression(scenario.getTimeCompression());
+        fleetEngine.setSettings(scenario.toFleetSettings());
+        if (scenario.getRecordTo() != null)
+            fleetEngine.getCommunicationService().startRecording(Path.of(scenario.getRecordTo()));
+        GeofenceAlertWriter alerts = scenario.getAlertsTo() != null ? new GeofenceAlertWriter(Path.of(scenario.getAlertsTo())) : null;
+        GeofenceEngine geofences = null;
+        if (scenario.getGeofences() != null || alerts != null) {
+            List<Geofence> zones = scenario.getGeofences() != null ? GeofenceEngine.loadZones(scenario.getGeofences()) : List.of();
+            geofences = new GeofenceEngine(new GeofenceIndex(zones, UserVariables.geofenceCellDegrees, UserVariables.geofenceMaxCells),
+                    metrics.getRegistry(), alerts != null ? alerts : alert -> {
+            }, eventLog);
+            fleetEngine.getCommunicationService().setStage(geofences);
+        }
+        eventLog.publish("Scenario " + scenario.getName() + ": " + scenario.getFleetSize() + " sensors at "
+                + scenario.getRampUpPerSecond() + "/s for " + scenario.getDurationSeconds() + " s, seed " + fleetEngine.getSettings().getSeed(), false);
+        long started = System.nanoTime();
+        // the ramp and the end run on the fleet clock, so they keep their pace relative to the sensors at any compression
+        Ramp ramp = new Ramp(scenario, fleetEngine.currentTimeMillis());
+        fleetEngine.scheduleOnce(ramp::registerDue, 0);
+        fleetEngine.scheduleOnce(ramp::finish, Math.round(scenario.getDurationSeconds() * 1000));
+        ramp.finished.await();
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+        metrics.awaitResponses(UserVariables.readTimeoutMillis + 1000L);
+        long recorded = fleetEngine.getCommunicationService().stopRecording();
+        fleetEngine.getCommunicationService().setStage(null);
+        if (alerts != null)
+            alerts.close();
+        eventLog.publish("Scenario " + scenario.getName() + " finished: " + ramp.registered + " sensors, "
+                + scenario.getDurationSeconds() + " simulated s in " + String.format("%.1f", elapsedSeconds) + " s", false);
+        if (scenario.getRecordTo() != null)
+            eventLog.publish("Recorded " + recorded + " readings to " + scenario.getRecordTo(), false);
+        metrics.printSummary(eventLog, elapsedSeconds);
+        if (geofences != null)
+            geofences.printSummary();
+        if (alerts != null)
+            eventLog.publish("Wrote " + alerts.getWritten() + " alerts to " + scenario.getAlertsTo(), false);
+        sink.ifAvailable(telemetrySink -> telemetrySink.printSummary(eventLog));
+    }
+
+    private class Ramp {
+        final Scenario scenario;
+        final long startedMillis;
+        final CountDownLatch finished = new CountDownLatch(1);
+        final SplittableRandom random;
+        int registered;
+        boolean stopped;
+
+        Ramp(Scenario scenario, long startedMillis) {
+            this.scenario = scenario;
+            this.startedMillis = startedMillis;
+            random = new SplittableRandom(fleetEngine.getSettings().getSeed());
+        }
+
+        synchronized void registerDue() {
+            if (stopped)
+                return;
+            // registers everything due by now in one go after a late wake-up, so the ramp keeps its rate on average
+            long elapsed = fleetEngine.currentTimeMillis() - startedMillis;
+            while (registered < scenario.getFleetSize() && dueMillis(registered) <= elapsed) {
+                String token = scenario.getTokenPrefix() + registered;
+                if (sensorService.registerSensor(token) && random.nextDouble() < scenario.getArmRatio())
+                    sensorService.armSensor(token);
+                registered++;
+            }
+            if (registered < scenario.getFleetSize())
+                fleetEngine.scheduleOnce(this::registerDue, Math.max(1, dueMillis(registered) - elapsed));
+        }
+
+        synchronized void finish() {
+            stopped = true;
+            for (int i = 0; i < registered; i++)
+                sensorService.stopSensor(scenario.getTokenPrefix() + i);
+            finished.countDown();
+        }
+
+        private long dueMillis(int sensor) {
+            return (long) Math.ceil(sensor * 1000L / scenario.getRampUpPerSecond());
+        }
+    }
+}
@@ -1,112 +1,192 @@
 package org.example.virtual_device.bean;
 
 import lombok.Getter;
-import org.example.virtual_device.UserVariables;
-import org.example.virtual_device.model.Coordinate;
-import org.example.virtual_device.services.CommunicationService;
-import org.example.virtual_device.services.RouteService;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.FleetSettings;
+import org.example.virtual_device.model.RouteCursor;
+import org.example.virtual_device.model.SensorState;
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.services.EventLog;
+import org.example.virtual_device.services.FleetEngine;
+import org.example.virtual_device.services.TelemetryEncoder;
 
-import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
 
 
+// lifecycle methods are synchronized on the sensor, so concurrent API calls for one token apply one after another
+// while calls for different tokens never contend
 public class Sensor {
-    String accessToken;
-    int currentLocationIndex;
-    List<Coordinate> route;
     @Getter
-    boolean armed;
-    boolean motionDetected;
-    private final CommunicationService communicationService = new CommunicationService();
+    String accessToken;
+    volatile RouteCursor route;
     @Getter
-    private Thread activeThread;
-    private Thread motionThread;
+    volatile boolean armed;
+    volatile boolean motionDetected;
+    volatile SyntheticImu imu; // null without a synthetic IMU, then the wake-up is the motion
+    private final FleetEngine fleetEngine;
+    private final DeviceChannel channel;
+    private final SplittableRandom random; // only used under the sensor's lock
+    private volatile ScheduledFuture<?> activeTask;
+    private volatile long lastTick = Long.MIN_VALUE; // only written by ticks and by a start, before it schedules them
+    private volatile Run run; // replaced as a whole by a start, so a tick never mixes the values of two starts
+    private ScheduledFuture<?> motionTask;
 
-    public Sensor(String accessToken) {
+    public Sensor(String accessToken, FleetEngine fleetEngine) {
         this.accessToken = accessToken;
-        currentLocationIndex = 0;
+        this.fleetEngine = fleetEngine;
+        channel = fleetEngine.getCommunicationService().openChannel(accessToken);
+        random = fleetEngine.newRandom(accessToken);
         armed = false;
-        route = RouteService.generateRoute();
-        startSensor();
+        FleetSettings settings = fleetEngine.getSettings();
+        run = new Run(settings, 0, 0);
+        route = fleetEngine.getRouteService().newCursor(random, settings.getRouteEnd());
+        imu = settings.newImu(random);
     }
 
-    public void motionThread() {
-        motionThread = new Thread(() -> {
-            // random time before motion
-            try {
-                Thread.sleep(((int) ((Math.random() * (UserVariables.maxWakeupTime - UserVariables.minWakeupTime)) + UserVariables.minWakeupTime)) * 1000L);
-                motionDetected = true;
-                System.out.println("Senosr " + accessToken + " detected motion");
-                if (armed) {
-                    System.out.println("Sensor: " + accessToken + " Buzzer is on");
-                    System.out.println("Sensor: " + accessToken + " LED is on");
-                }
-            } catch (InterruptedException ignored) {
-            }
-        });
-        motionThread.start();
+    public boolean isActive() {
+        return activeTask != null;
+    }
+
+    public SensorState getState() {
+        if (activeTask == null)
+            return SensorState.STOPPED;
+        if (armed)
+            return motionDetected ? SensorState.ALARM : SensorState.ARMED;
+        return motionDetected ? SensorState.MOVING : SensorState.IDLE;
+    }
+
+    public void scheduleMotion() {
+        // random time before motion
+        long wakeupTime = fleetEngine.getSettings().nextWakeupMillis(random);
+        motionTask = fleetEngine.scheduleOnce(imu != null ? this::startMoving : this::detectMotion, wakeupTime);
     }
 
-    public void startSensor() {
-        activeThread = new Thread(() -> {
-            System.out.println("Starting sensor: " + accessToken);
-            while (true) {
-                communicationService.sendCoordinate(accessToken, route.get(currentLocationIndex), motionDetected, armed);
-                try {
-                    Thread.sleep(UserVariables.delayBetweenSending * 1000L);
-                } catch (InterruptedException e) {
-                    return;
-                }
-                if (motionDetected) {
-                    if (currentLocationIndex + 1 < route.size()) {
-                        currentLocationIndex++;
-                    } else {
-                        currentLocationIndex = route.size() - 1;
-                    }
-                }
+    // the device gets moved, the IMU's threshold check in the next tick detects it
+    private synchronized void startMoving() {
+        if (activeTask == null)
+            return;
+        imu.startMovement(fleetEngine.nanoTime());
+    }
+
+    private synchronized void detectMotion() {
+        // the wake-up may already be running when the sensor is stopped
+        if (activeTask == null)
+            return;
+        motionDetected = true;
+        fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Senosr " + accessToken + " detected motion");
+        if (armed) {
+            fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " Buzzer is on");
+            fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " LED is on");
+        }
+    }
+
+    public synchronized boolean startSensor() {
+        if (activeTask != null)
+            return false;
+        fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Starting sensor: " + accessToken);
+        long sendInterval = prepareRun();
+        activeTask = fleetEngine.scheduleTicks(this::tick, sendInterval, random);
+        scheduleMotion();
+        return true;
+    }
+
+    // picks what a start picks without scheduling anything, FleetTickBenchmark ticks the sensors itself
+    synchronized long prepareRun() {
+        FleetSettings settings = fleetEngine.getSettings();
+        long sendInterval = settings.getSendIntervalMillis();
+        double metersPerNano = settings.nextSpeedMetersPerSecond(random) / 1e9;
+        imu = settings.newImu(random);
+        lastTick = Long.MIN_VALUE;
+        run = new Run(settings, sendInterval * 1_000_000, metersPerNano);
+        return sendInterval;
+    }
+
+    void tick() {
+        long now = fleetEngine.nanoTime();
+        RouteCursor cursor = route;
+        Run run = this.run;
+        long lastTick = this.lastTick;
+        if (lastTick != Long.MIN_VALUE) {
+            long elapsed = now - lastTick;
+            fleetEngine.getMetrics().recordTickLag(elapsed - run.tickPeriodNanos());
+            // the distance follows the time that actually passed, so positions stay continuous at any send interval
+            if (motionDetected)
+                cursor.advance(elapsed * run.metersPerNano());
+        }
+        this.lastTick = now;
+        SyntheticImu imu = this.imu;
+        // like the firmware, an accel magnitude over the threshold sets off the alert
+        if (imu != null && imu.advance(now) && !this.motionDetected)
+            detectMotion();
+        long timestamp = fleetEngine.currentTimeMillis();
+        boolean motionDetected = this.motionDetected;
+        boolean armed = this.armed;
+        int fields = TelemetryEncoder.ALL_FIELDS;
+        FleetSettings settings = run.settings();
+        if (settings.isReportByException()) {
+            fields = channel.changedFields(timestamp, cursor.getLatitude(), cursor.getLongitude(), motionDetected, armed,
+                    settings.getReportDistanceMeters(), settings.getHeartbeatMillis());
+            if (fields == 0) {
+                fleetEngine.getMetrics().recordSuppressed();
+                return;
             }
-        });
-        activeThread.start();
-        motionThread();
+        }
+        fleetEngine.getCommunicationService().sendCoordinate(channel, fields, timestamp, cursor.getLatitude(), cursor.getLongitude(), motionDetected, armed, imu);
     }
 
-    public void armSensor() {
+    // returns false if the sensor is stopped
+    public synchronized boolean armSensor() {
+        if (activeTask == null)
+            return false;
         if (armed) {
             //System.out.println("Sensor " + id + " is already armed");
-            return;
+            return true;
         }
         armed = true;
-        System.out.println("Armed sensor: " + accessToken);
+        fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Armed sensor: " + accessToken);
         if (motionDetected) {
-            System.out.println("Sensor: " + accessToken + " Buzzer is on");
-            System.out.println("Sensor: " + accessToken + " LED is on");
+            fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " Buzzer is on");
+            fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " LED is on");
         }
+        return true;
     }
 
-    public void disarmSensor() {
+    // returns false if the sensor is stopped
+    public synchronized boolean disarmSensor() {
+        if (activeTask == null)
+            return false;
         if (!armed) {
             // System.out.println("Sensor " + id + " is already disarmed");
-            return;
+            return true;
         }
-        System.out.println("Disarmed sensor: " + accessToken);
+        fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Disarmed sensor: " + accessToken);
         if (motionDetected) {
-            System.out.println("Sensor: " + accessToken + " Buzzer is off");
-            System.out.println("Sensor: " + accessToken + " LED is off");
+            fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " Buzzer is off");
+            fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " LED is off");
         }
         armed = false;
+        return true;
     }
 
-    public void stopSensor() {
-        System.out.println("Stopping senosr: " + accessToken);
-        activeThread.interrupt();
-        motionThread.interrupt();
+    public synchronized boolean stopSensor() {
+        if (activeTask == null)
+            return false;
+        fleetEngine.getEventLog().info(EventLog.Kind.SENSOR, "Stopping senosr: " + accessToken);
+        activeTask.cancel(false);
+        motionTask.cancel(false);
         resetSensor();
+        return true;
     }
 
     public void resetSensor() {
-        currentLocationIndex = 0;
         armed = false;
         motionDetected = false;
-        route = RouteService.generateRoute();
-        activeThread = null;
+        route = fleetEngine.getRouteService().newCursor(random, fleetEngine.getSettings().getRouteEnd());
+        activeTask = null;
+    }
+
+    // the settings the sensor was started with and what it picked from them
+    private record Run(FleetSettings settings, long tickPeriodNanos, double metersPerNano) {
     }
 }
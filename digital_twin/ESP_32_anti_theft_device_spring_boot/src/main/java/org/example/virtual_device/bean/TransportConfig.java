@@ -0,0 +1,31 @@
+package org.example.virtual_device.bean;
+
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.services.EventLog;
+import org.example.virtual_device.services.FleetMetrics;
+import org.example.virtual_device.services.HttpTelemetryTransport;
+import org.example.virtual_device.services.MqttTelemetryTransport;
+import org.example.virtual_device.services.TelemetryTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class TransportConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public TelemetryTransport telemetryTransport(FleetMetrics metrics, EventLog eventLog,
+                                                 @Value("${twin.sink:" + UserVariables.embeddedSink + "}") boolean sink,
+                                                 @Value("${server.port:8080}") int port) {
+        if (sink) {
+            // the embedded sink only speaks HTTP, whatever transport is configured
+            String local = "http://localhost:" + port + "/api/v1/";
+            return new HttpTelemetryTransport(local + UserVariables.gatewayAccessToken + "/telemetry", local + "gateway/telemetry", metrics, eventLog, true);
+        }
+        return switch (UserVariables.transport) {
+            case "mqtt" -> new MqttTelemetryTransport(UserVariables.mqttBrokerURL, UserVariables.mqttQos, false, metrics, eventLog);
+            case "mqtt-gateway" -> new MqttTelemetryTransport(UserVariables.mqttBrokerURL, UserVariables.mqttQos, true, metrics, eventLog);
+            default -> new HttpTelemetryTransport(UserVariables.platformAPIURL, UserVariables.platformBatchAPIURL, metrics, eventLog);
+        };
+    }
+}
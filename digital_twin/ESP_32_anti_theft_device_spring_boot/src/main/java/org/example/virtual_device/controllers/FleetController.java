@@ -0,0 +1,103 @@
+package org.example.virtual_device.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.BulkRequest;
+import org.example.virtual_device.model.BulkResult;
+import org.example.virtual_device.services.BulkSensorService;
+import org.example.virtual_device.services.SensorService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// bulk variants of SensorController, the body is {"tokens": [...]} and/or {"range": "dev-00000..dev-49999"}
+// and the response streams one JSON line per sensor followed by a summary line
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/fleet")
+public class FleetController {
+
+    private final SensorService sensorService;
+    private final BulkSensorService bulkSensorService;
+    private final ObjectMapper objectMapper;
+
+    @PostMapping("register")
+    public ResponseEntity<ResponseBodyEmitter> registerSensors(@RequestBody BulkRequest request) {
+        return apply(request, sensorService::registerSensor, "registered", "already taken");
+    }
+
+    @PostMapping("start")
+    public ResponseEntity<ResponseBodyEmitter> startSensors(@RequestBody BulkRequest request) {
+        return apply(request, sensorService::startSensor, "started", "not found");
+    }
+
+    @PostMapping("stop")
+    public ResponseEntity<ResponseBodyEmitter> stopSensors(@RequestBody BulkRequest request) {
+        return apply(request, sensorService::stopSensor, "stopped", "not found");
+    }
+
+    @PostMapping("arm")
+    public ResponseEntity<ResponseBodyEmitter> armSensors(@RequestBody BulkRequest request) {
+        return apply(request, sensorService::armSensor, "armed", "not registered or is offline");
+    }
+
+    @PostMapping("disarm")
+    public ResponseEntity<ResponseBodyEmitter> disarmSensors(@RequestBody BulkRequest request) {
+        return apply(request, sensorService::disarmSensor, "disarmed", "not registered or is offline");
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> apply(BulkRequest request, Predicate<String> operation, String okStatus, String failedStatus) {
+        List<String> tokens = request.resolveTokens(UserVariables.bulkMaxTokens);
+        long started = System.currentTimeMillis();
+        // no timeout, large cohorts take as long as they take
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+        bulkSensorService.apply(tokens, operation, okStatus, failedStatus, results -> send(emitter, toLines(results)))
+                .whenComplete((succeeded, e) -> {
+                    if (e != null) {
+                        emitter.completeWithError(e);
+                        return;
+                    }
+                    Map<String, Object> summary = new LinkedHashMap<>();
+                    summary.put("requested", tokens.size());
+                    summary.put("succeeded", succeeded);
+                    summary.put("failed", tokens.size() - succeeded);
+                    summary.put("millis", System.currentTimeMillis() - started);
+                    send(emitter, toLine(Map.of("summary", summary)));
+                    emitter.complete();
+                });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    private String toLines(List<BulkResult> results) {
+        StringBuilder lines = new StringBuilder(results.size() * 64);
+        for (BulkResult result : results) {
+            lines.append(toLine(result));
+        }
+        return lines.toString();
+    }
+
+    private String toLine(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value) + "\n";
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(ResponseBodyEmitter emitter, String lines) {
+        try {
+            emitter.send(lines, MediaType.APPLICATION_NDJSON);
+        } catch (IOException e) {
+            // the client went away, the operations themselves still finish
+        }
+    }
+}
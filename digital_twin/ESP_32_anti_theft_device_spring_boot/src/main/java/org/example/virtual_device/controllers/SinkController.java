@@ -0,0 +1,81 @@
+package org.example.virtual_device.controllers;
+
+import lombok.RequiredArgsConstructor;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.services.TelemetrySink;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+// the embedded sink's telemetry API on the platform's paths, and its readings, statistics and RPCs under /sink
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "twin.sink", havingValue = "true", matchIfMissing = UserVariables.embeddedSink)
+public class SinkController {
+
+    private final TelemetrySink sink;
+
+    // like the platform the token in the path identifies the device, the twin's own transport sends the device's token as bearer instead
+    @PostMapping("/api/v1/{accessToken}/telemetry")
+    public ResponseEntity<String> telemetry(@PathVariable String accessToken,
+                                            @RequestHeader(value = "Authorization", required = false) String authHeader,
+                                            @RequestHeader(value = TelemetrySink.SENT_HEADER, required = false) Long sent,
+                                            @RequestBody byte[] body) {
+        String device = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7) : accessToken;
+        if (!sink.isAvailable())
+            return unavailable();
+        try {
+            sink.ingest(device, body, sent == null ? TelemetrySink.NOT_SENT : sent);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/api/v1/gateway/telemetry")
+    public ResponseEntity<String> gatewayTelemetry(@RequestHeader(value = TelemetrySink.SENT_HEADER, required = false) Long sent,
+                                                   @RequestBody byte[] body) {
+        if (!sink.isAvailable())
+            return unavailable();
+        try {
+            sink.ingestBatch(body, sent == null ? TelemetrySink.NOT_SENT : sent);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/sink/stats")
+    public TelemetrySink.Stats stats() {
+        return sink.getStats();
+    }
+
+    @GetMapping("/sink/{accessToken}/telemetry")
+    public List<TelemetrySink.Reading> readings(@PathVariable String accessToken, @RequestParam(defaultValue = "100") int limit) {
+        return sink.getReadings(accessToken, limit);
+    }
+
+    @PostMapping("/sink/outage")
+    public ResponseEntity<String> outage(@RequestParam long seconds) {
+        sink.startOutage(seconds * 1000);
+        return ResponseEntity.ok("Telemetry is answered with 503 for " + seconds + " s");
+    }
+
+    // the body is {"method": "armDevice"} or {"method": "disarmDevice"}, like a one-way RPC of the platform
+    @PostMapping("/sink/{accessToken}/rpc")
+    public ResponseEntity<String> rpc(@PathVariable String accessToken, @RequestBody Map<String, Object> request) {
+        String method = String.valueOf(request.get("method"));
+        if (sink.sendRpc(accessToken, method))
+            return ResponseEntity.ok("RPC " + method + " delivered to " + accessToken);
+        else
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Sensor " + accessToken + " not registered, offline or does not handle " + method);
+    }
+
+    private static ResponseEntity<String> unavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Sink outage");
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.virtual_device.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class BulkRequest {
+    List<String> tokens; // explicit tokens
+    String range; // e.g. "dev-00000..dev-49999"
+
+    public List<String> resolveTokens(int maxSize) {
+        List<String> resolved = tokens == null ? List.of() : tokens;
+        if (range != null && !range.isBlank()) {
+            TokenRange tokenRange = TokenRange.parse(range, maxSize);
+            if (resolved.isEmpty())
+                return tokenRange;
+            resolved = new ArrayList<>(resolved);
+            resolved.addAll(tokenRange);
+        }
+        if (resolved.isEmpty())
+            throw new IllegalArgumentException("Bulk request needs tokens or a range");
+        if (resolved.size() > maxSize)
+            throw new IllegalArgumentException("Bulk request has more than " + maxSize + " tokens");
+        return resolved;
+    }
+}
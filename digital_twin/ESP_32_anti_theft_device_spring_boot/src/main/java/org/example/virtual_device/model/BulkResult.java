@@ -0,0 +1,12 @@
+package org.example.virtual_device.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BulkResult {
+    String token;
+    boolean ok;
+    String status;
+}
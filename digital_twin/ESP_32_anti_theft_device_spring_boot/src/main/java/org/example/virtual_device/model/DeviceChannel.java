@@ -0,0 +1,123 @@
+package org.example.virtual_device.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.example.virtual_device.services.TelemetryEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// everything a sensor needs to send that can be prepared once at registration instead of on every tick:
+// its headers and batch key pre-encoded, and one reusable payload buffer per request it may have in flight
+public class DeviceChannel {
+    @Getter
+    private final String accessToken;
+    @Getter
+    private final String authorization; // "Bearer <token>"
+    @Getter
+    private final byte[] batchKey; // "<token>":[ with the token JSON escaped
+    private final TelemetryBuffer[] buffers;
+    private final AtomicInteger freeBuffers; // bit i is set while buffers[i] is free
+    @Getter
+    @Setter
+    private long batchEpoch = -1; // last batch the sensor has a reading in, written by the batcher only
+    private final AtomicInteger spooled = new AtomicInteger(); // readings waiting in the spool, counted by the spool only
+    // what the platform was last told, for report by exception, only used by the sensor's ticks
+    private long fullReportAt = Long.MIN_VALUE; // the heartbeat counts from the last full reading
+    private boolean reportedMotion;
+    private boolean reportedArmed;
+    private double reportedLatitude = Double.NaN; // NaN while the location is not being reported
+    private double reportedLongitude = Double.NaN;
+
+    public DeviceChannel(String accessToken, int maxInFlight) {
+        if (maxInFlight < 1 || maxInFlight > 31)
+            throw new IllegalArgumentException("maxInFlight must be between 1 and 31");
+        this.accessToken = accessToken;
+        authorization = "Bearer " + accessToken;
+        batchKey = ("\"" + escape(accessToken) + "\":[").getBytes(StandardCharsets.UTF_8);
+        buffers = new TelemetryBuffer[maxInFlight];
+        freeBuffers = new AtomicInteger((1 << maxInFlight) - 1);
+    }
+
+    // returns null while all buffers are in flight
+    public TelemetryBuffer acquire() {
+        while (true) {
+            int free = freeBuffers.get();
+            if (free == 0)
+                return null;
+            int slot = Integer.numberOfTrailingZeros(free);
+            if (freeBuffers.compareAndSet(free, free & ~(1 << slot))) {
+                if (buffers[slot] == null)
+                    buffers[slot] = new TelemetryBuffer(256);
+                return buffers[slot].reset();
+            }
+        }
+    }
+
+    public void release(TelemetryBuffer buffer) {
+        for (int slot = 0; slot < buffers.length; slot++) {
+            if (buffers[slot] == buffer) {
+                int bit = 1 << slot;
+                freeBuffers.getAndUpdate(free -> free | bit);
+                return;
+            }
+        }
+    }
+
+    // the fields that changed since the last report, all of them once the heartbeat is due, 0 if nothing is worth sending
+    public int changedFields(long ts, double latitude, double longitude, boolean motionDetected, boolean armed,
+                             double distanceMeters, long heartbeatMillis) {
+        if (fullReportAt == Long.MIN_VALUE || ts - fullReportAt >= heartbeatMillis)
+            return TelemetryEncoder.ALL_FIELDS;
+        int fields = 0;
+        if (motionDetected != reportedMotion)
+            fields |= TelemetryEncoder.MOTION_FIELD;
+        if (armed != reportedArmed)
+            fields |= TelemetryEncoder.ARMED_FIELD;
+        if (motionDetected && armed && (Double.isNaN(reportedLatitude)
+                || GreatCircle.distanceMeters(reportedLatitude, reportedLongitude, latitude, longitude) > distanceMeters))
+            fields |= TelemetryEncoder.LOCATION_FIELD;
+        return fields;
+    }
+
+    public void reported(int fields, long ts, double latitude, double longitude, boolean motionDetected, boolean armed) {
+        if (fields == TelemetryEncoder.ALL_FIELDS)
+            fullReportAt = ts;
+        if ((fields & TelemetryEncoder.MOTION_FIELD) != 0)
+            reportedMotion = motionDetected;
+        if ((fields & TelemetryEncoder.ARMED_FIELD) != 0)
+            reportedArmed = armed;
+        if (!motionDetected || !armed) {
+            // the next alarm reports its location right away
+            reportedLatitude = Double.NaN;
+        } else if ((fields & TelemetryEncoder.LOCATION_FIELD) != 0) {
+            reportedLatitude = latitude;
+            reportedLongitude = longitude;
+        }
+    }
+
+    public int getSpooled() {
+        return spooled.get();
+    }
+
+    public void addSpooled(int readings) {
+        spooled.addAndGet(readings);
+    }
+
+    public int getInFlight() {
+        return buffers.length - Integer.bitCount(freeBuffers.get());
+    }
+
+    public static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                escaped.append('\\').append(c);
+            else if (c < 0x20)
+                escaped.append(String.format("\\u%04x", (int) c));
+            else
+                escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
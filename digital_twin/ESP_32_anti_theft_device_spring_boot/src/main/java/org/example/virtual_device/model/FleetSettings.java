@@ -0,0 +1,65 @@
+package org.example.virtual_device.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.example.virtual_device.UserVariables;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+// how sensors started from now on behave, UserVariables unless a scenario says otherwise
+@Getter
+@AllArgsConstructor
+public class FleetSettings {
+
+    public enum WakeupDistribution {
+        UNIFORM, // anywhere between min and max
+        EXPONENTIAL // min plus an exponential wait with the given mean, cut off at max
+    }
+
+    long sendIntervalMillis;
+    WakeupDistribution wakeupDistribution;
+    long minWakeupMillis;
+    long maxWakeupMillis;
+    long meanWakeupMillis;
+    long seed; // with the token, seeds each sensor's random choices, the same seed gives the same traffic
+    double speedKmh;
+    double speedVariation; // each sensor drives at speedKmh times 1 +- up to this
+    RouteEnd routeEnd;
+    boolean reportByException; // sensors send only changed fields, everything once per heartbeat
+    double reportDistanceMeters; // location change that is sent again while reporting by exception
+    long heartbeatMillis;
+    double imuSampleRateHz; // 0 without a synthetic IMU
+    double accelThresholdG;
+
+    public static FleetSettings defaults() {
+        return new FleetSettings(UserVariables.delayBetweenSending * 1000L, WakeupDistribution.UNIFORM,
+                UserVariables.minWakeupTime * 1000L, UserVariables.maxWakeupTime * 1000L, 0, defaultSeed(),
+                UserVariables.speedKmh, UserVariables.speedVariation, RouteEnd.parse(UserVariables.routeEnd),
+                UserVariables.reportByException, UserVariables.reportDistanceMeters, UserVariables.heartbeatSeconds * 1000L,
+                UserVariables.imuSampleRateHz, UserVariables.accelThresholdG);
+    }
+
+    public static long defaultSeed() {
+        return UserVariables.randomSeed != 0 ? UserVariables.randomSeed : System.nanoTime();
+    }
+
+    public double nextSpeedMetersPerSecond(RandomGenerator random) {
+        return speedKmh * (1 + speedVariation * (2 * random.nextDouble() - 1)) / 3.6;
+    }
+
+    // each sensor's own IMU, with its own random so the ticks never share the sensor's
+    public SyntheticImu newImu(SplittableRandom random) {
+        return imuSampleRateHz > 0 ? new SyntheticImu(imuSampleRateHz, accelThresholdG, random.split()) : null;
+    }
+
+    public long nextWakeupMillis(RandomGenerator random) {
+        if (maxWakeupMillis <= minWakeupMillis)
+            return minWakeupMillis;
+        return switch (wakeupDistribution) {
+            case UNIFORM -> random.nextLong(minWakeupMillis, maxWakeupMillis);
+            case EXPONENTIAL -> Math.min(maxWakeupMillis,
+                    minWakeupMillis + (long) (-Math.log(1 - random.nextDouble()) * (meanWakeupMillis - minWakeupMillis)));
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package org.example.virtual_device.model;
 
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.services.EventLog;
 import org.example.virtual_device.services.SensorService;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -7,9 +9,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestTemplate;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.Map;
 
 public class GUI extends JFrame {
@@ -17,12 +18,14 @@ public class GUI extends JFrame {
     private final JComboBox<String> sensorDropdown;
     private final JTextField tokenField;
     private final SensorService sensorService;
+    private final EventLog eventLog;
     private final JTextArea consoleArea;
     private final RestTemplate restTemplate = new RestTemplate();
 
-    public GUI(SensorService sensorService) {
+    public GUI(SensorService sensorService, EventLog eventLog) {
         super("Seqjuriti");
         this.sensorService = sensorService;
+        this.eventLog = eventLog;
 
         JPanel topPanel = new JPanel();
         topPanel.setLayout(new GridLayout(2, 1));
@@ -43,7 +46,7 @@ public class GUI extends JFrame {
         consoleArea.setEditable(false);
         consoleArea.setLineWrap(true);
         JScrollPane scrollPane = new JScrollPane(consoleArea);
-        redirectSystemOutToTextArea();
+        showEventLog();
 
         // Buttons
         JPanel buttonPanel = new JPanel();
@@ -99,22 +102,27 @@ public class GUI extends JFrame {
         return button;
     }
 
-    private void redirectSystemOutToTextArea() {
-        OutputStream out = new OutputStream() {
-            @Override
-            public void write(int b) {
-                consoleArea.append(String.valueOf((char) b));
-                consoleArea.setCaretPosition(consoleArea.getDocument().getLength());
-            }
+    private void showEventLog() {
+        // the event log hands over a batch of lines every 100 ms, each batch is one append on the EDT
+        eventLog.setSink(lines -> {
+            StringBuilder text = new StringBuilder();
+            for (EventLog.Line line : lines)
+                text.append(line.text()).append('\n');
+            SwingUtilities.invokeLater(() -> appendToConsole(text.toString()));
+        });
+    }
 
-            @Override
-            public void write(byte[] b, int off, int len) {
-                consoleArea.append(new String(b, off, len));
-                consoleArea.setCaretPosition(consoleArea.getDocument().getLength());
+    private void appendToConsole(String text) {
+        consoleArea.append(text);
+        int excess = consoleArea.getLineCount() - UserVariables.consoleMaxLines;
+        if (excess > 0) {
+            try {
+                consoleArea.replaceRange("", 0, consoleArea.getLineEndOffset(excess - 1));
+            } catch (BadLocationException e) {
+                consoleArea.setText("");
             }
-        };
-        PrintStream printStream = new PrintStream(out, true);
-        System.setOut(printStream);
+        }
+        consoleArea.setCaretPosition(consoleArea.getDocument().getLength());
     }
 
     private void refreshSensorDropdown() {
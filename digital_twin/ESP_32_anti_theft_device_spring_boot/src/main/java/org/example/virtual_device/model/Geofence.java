@@ -0,0 +1,78 @@
+package org.example.virtual_device.model;
+
+import lombok.Getter;
+
+// a safe zone, a circle around a point or a polygon (that does not cross the antimeridian), with its bounding box
+@Getter
+public class Geofence {
+
+    private final String id;
+    private final double[] latitudes; // polygon corners, null for a circle
+    private final double[] longitudes;
+    private final double latitude; // circle center
+    private final double longitude;
+    private final double radiusMeters;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+
+    private Geofence(String id, double[] latitudes, double[] longitudes, double latitude, double longitude, double radiusMeters,
+                     double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        this.id = id;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    public static Geofence circle(String id, double latitude, double longitude, double radiusMeters) {
+        if (radiusMeters <= 0 || Math.abs(latitude) > 90 || Math.abs(longitude) > 180)
+            throw new IllegalArgumentException("Geofence " + id + " needs a valid center and a positive radius");
+        double latitudeSpan = Math.toDegrees(radiusMeters / GreatCircle.EARTH_RADIUS_METERS);
+        // a circle around a pole takes every longitude
+        double cos = Math.cos(Math.toRadians(Math.min(90, Math.abs(latitude) + latitudeSpan)));
+        double longitudeSpan = cos * 180 > latitudeSpan ? latitudeSpan / cos : 180;
+        return new Geofence(id, null, null, latitude, longitude, radiusMeters,
+                latitude - latitudeSpan, latitude + latitudeSpan, longitude - longitudeSpan, longitude + longitudeSpan);
+    }
+
+    public static Geofence polygon(String id, double[] latitudes, double[] longitudes) {
+        if (latitudes.length < 3 || latitudes.length != longitudes.length)
+            throw new IllegalArgumentException("Geofence " + id + " needs at least 3 corners");
+        double minLatitude = Double.POSITIVE_INFINITY, maxLatitude = Double.NEGATIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY, maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLatitude = Math.min(minLatitude, latitudes[i]);
+            maxLatitude = Math.max(maxLatitude, latitudes[i]);
+            minLongitude = Math.min(minLongitude, longitudes[i]);
+            maxLongitude = Math.max(maxLongitude, longitudes[i]);
+        }
+        return new Geofence(id, latitudes.clone(), longitudes.clone(), Double.NaN, Double.NaN, 0,
+                minLatitude, maxLatitude, minLongitude, maxLongitude);
+    }
+
+    public boolean isCircle() {
+        return latitudes == null;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude)
+            return false;
+        if (latitudes == null)
+            return GreatCircle.distanceMeters(this.latitude, this.longitude, latitude, longitude) <= radiusMeters;
+        // even-odd rule, the corners are close enough together for edges to be straight in degrees
+        boolean inside = false;
+        for (int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            if ((latitudes[i] > latitude) != (latitudes[j] > latitude)
+                    && longitude < longitudes[j] + (latitude - latitudes[j]) * (longitudes[i] - longitudes[j]) / (latitudes[i] - latitudes[j]))
+                inside = !inside;
+        }
+        return inside;
+    }
+}
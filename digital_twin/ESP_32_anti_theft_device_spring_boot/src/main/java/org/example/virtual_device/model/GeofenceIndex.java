@@ -0,0 +1,90 @@
+package org.example.virtual_device.model;
+
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// a uniform grid over the zones: every cell lists the zones whose bounding box overlaps it, so a lookup tests the few
+// zones around a position instead of all of them. Built once and shared, lookups allocate nothing
+public class GeofenceIndex {
+
+    private final Geofence[] zones;
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double cellDegrees;
+    private final int rows;
+    private final int columns;
+    // the zones of cell c are cellZones[cellStart[c]] up to cellZones[cellStart[c + 1]]
+    private final int[] cellStart;
+    private final int[] cellZones;
+
+    // cells are cellDegrees wide and high, larger if that would take more than maxCells
+    public GeofenceIndex(List<Geofence> zones, double cellDegrees, int maxCells) {
+        if (cellDegrees <= 0 || maxCells < 1)
+            throw new IllegalArgumentException("Geofence index needs a positive cell size and cell count");
+        this.zones = zones.toArray(new Geofence[0]);
+        double minLatitude = 0, maxLatitude = 0, minLongitude = 0, maxLongitude = 0;
+        for (int i = 0; i < this.zones.length; i++) {
+            Geofence zone = this.zones[i];
+            minLatitude = i == 0 ? zone.getMinLatitude() : Math.min(minLatitude, zone.getMinLatitude());
+            maxLatitude = i == 0 ? zone.getMaxLatitude() : Math.max(maxLatitude, zone.getMaxLatitude());
+            minLongitude = i == 0 ? zone.getMinLongitude() : Math.min(minLongitude, zone.getMinLongitude());
+            maxLongitude = i == 0 ? zone.getMaxLongitude() : Math.max(maxLongitude, zone.getMaxLongitude());
+        }
+        double cells = Math.ceil((maxLatitude - minLatitude) / cellDegrees + 1) * Math.ceil((maxLongitude - minLongitude) / cellDegrees + 1);
+        if (cells > maxCells)
+            cellDegrees *= Math.sqrt(cells / maxCells) * 1.01;
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.cellDegrees = cellDegrees;
+        rows = (int) ((maxLatitude - minLatitude) / cellDegrees) + 1;
+        columns = (int) ((maxLongitude - minLongitude) / cellDegrees) + 1;
+
+        cellStart = new int[rows * columns + 1];
+        for (Geofence zone : this.zones)
+            forEachCell(zone, cell -> cellStart[cell + 1]++);
+        for (int cell = 0; cell < rows * columns; cell++)
+            cellStart[cell + 1] += cellStart[cell];
+        cellZones = new int[cellStart[rows * columns]];
+        int[] filled = new int[rows * columns];
+        for (int i = 0; i < this.zones.length; i++) {
+            int zone = i;
+            forEachCell(this.zones[i], cell -> cellZones[cellStart[cell] + filled[cell]++] = zone);
+        }
+    }
+
+    public int size() {
+        return zones.length;
+    }
+
+    public Geofence getZone(int zone) {
+        return zones[zone];
+    }
+
+    public boolean contains(int zone, double latitude, double longitude) {
+        return zones[zone].contains(latitude, longitude);
+    }
+
+    // the first zone containing the position, -1 if there is none
+    public int find(double latitude, double longitude) {
+        int row = (int) Math.floor((latitude - minLatitude) / cellDegrees);
+        int column = (int) Math.floor((longitude - minLongitude) / cellDegrees);
+        if (zones.length == 0 || row < 0 || row >= rows || column < 0 || column >= columns)
+            return -1;
+        int cell = row * columns + column;
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            if (zones[cellZones[i]].contains(latitude, longitude))
+                return cellZones[i];
+        }
+        return -1;
+    }
+
+    private void forEachCell(Geofence zone, IntConsumer action) {
+        int firstRow = (int) ((zone.getMinLatitude() - minLatitude) / cellDegrees);
+        int lastRow = Math.min(rows - 1, (int) ((zone.getMaxLatitude() - minLatitude) / cellDegrees));
+        int firstColumn = (int) ((zone.getMinLongitude() - minLongitude) / cellDegrees);
+        int lastColumn = Math.min(columns - 1, (int) ((zone.getMaxLongitude() - minLongitude) / cellDegrees));
+        for (int row = firstRow; row <= lastRow; row++)
+            for (int column = firstColumn; column <= lastColumn; column++)
+                action.accept(row * columns + column);
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.virtual_device.model;
+
+public final class GreatCircle {
+
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8; // mean radius
+
+    private GreatCircle() {
+    }
+
+    // haversine, accurate for the short segments of a GPS track where the law of cosines loses precision
+    public static double distanceMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double h = sinDeltaPhi * sinDeltaPhi + Math.cos(phi1) * Math.cos(phi2) * sinDeltaLambda * sinDeltaLambda;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.virtual_device.model;
+
+// a cursor whose position lies anywhere on the great circle between two route points, not only on the points
+public abstract class InterpolatingCursor implements RouteCursor {
+
+    private static final double SHORT_SEGMENT = 2e-4; // radians, about 1.3 km
+
+    private double latitude;
+    private double longitude;
+
+    @Override
+    public double getLatitude() {
+        return latitude;
+    }
+
+    @Override
+    public double getLongitude() {
+        return longitude;
+    }
+
+    protected void placeAt(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    // fraction of the way between two points given in degrees, angle is their distance in radians
+    protected void placeBetween(double latitude1, double longitude1, double latitude2, double longitude2, double angle, double fraction) {
+        if (fraction <= 0) {
+            placeAt(latitude1, longitude1);
+            return;
+        }
+        if (fraction >= 1) {
+            placeAt(latitude2, longitude2);
+            return;
+        }
+        if (angle < SHORT_SEGMENT && Math.abs(longitude2 - longitude1) <= 180) {
+            // on a short segment the great circle and the straight line between the coordinates are centimetres apart
+            placeAt(latitude1 + (latitude2 - latitude1) * fraction, longitude1 + (longitude2 - longitude1) * fraction);
+            return;
+        }
+        double phi1 = Math.toRadians(latitude1);
+        double lambda1 = Math.toRadians(longitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double lambda2 = Math.toRadians(longitude2);
+        double cosPhi1 = Math.cos(phi1);
+        double cosPhi2 = Math.cos(phi2);
+        place(cosPhi1 * Math.cos(lambda1), cosPhi1 * Math.sin(lambda1), Math.sin(phi1),
+                cosPhi2 * Math.cos(lambda2), cosPhi2 * Math.sin(lambda2), Math.sin(phi2), angle, fraction);
+    }
+
+    // spherical linear interpolation between two unit vectors
+    private void place(double ax, double ay, double az, double bx, double by, double bz, double angle, double fraction) {
+        double sinAngle = Math.sin(angle);
+        double weightA;
+        double weightB;
+        if (sinAngle < 1e-12) {
+            // below a micrometre the straight line is the great circle
+            weightA = 1 - fraction;
+            weightB = fraction;
+        } else {
+            weightA = Math.sin((1 - fraction) * angle) / sinAngle;
+            weightB = Math.sin(fraction * angle) / sinAngle;
+        }
+        double x = weightA * ax + weightB * bx;
+        double y = weightA * ay + weightB * by;
+        double z = weightA * az + weightB * bz;
+        latitude = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+        longitude = Math.toDegrees(Math.atan2(y, x));
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.virtual_device.model;
+
+import lombok.Getter;
+
+// immutable and shared by every sensor driving it, sensors only keep their own position on it
+public class Route {
+    @Getter
+    private final String name;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final RouteInterpolator interpolator;
+
+    public Route(String name, double[] latitudes, double[] longitudes) {
+        if (latitudes.length != longitudes.length || latitudes.length == 0)
+            throw new IllegalArgumentException("Route " + name + " needs the same, non-zero number of latitudes and longitudes");
+        this.name = name;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        interpolator = new RouteInterpolator(latitudes, longitudes);
+    }
+
+    public int size() {
+        return latitudes.length;
+    }
+
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    public double getLength() {
+        return interpolator.getLength();
+    }
+
+    public RouteCursor cursor(RouteEnd end) {
+        return interpolator.cursor(end);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + size() + " points, " + Math.round(getLength()) + " m)";
+    }
+}
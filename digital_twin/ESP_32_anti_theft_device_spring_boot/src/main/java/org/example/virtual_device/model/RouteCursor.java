@@ -0,0 +1,12 @@
+package org.example.virtual_device.model;
+
+// a sensor's position on its route, sources that stream their points only ever need to move forward
+public interface RouteCursor {
+
+    double getLatitude();
+
+    double getLongitude();
+
+    // drives this far along the route, the position may lie between two points
+    void advance(double meters);
+}
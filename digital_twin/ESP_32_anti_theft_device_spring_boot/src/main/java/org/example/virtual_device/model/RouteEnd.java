@@ -0,0 +1,18 @@
+package org.example.virtual_device.model;
+
+import java.util.Locale;
+
+// what a moving sensor does when it reaches the end of its route
+public enum RouteEnd {
+    STOP, // stays on the last point
+    LOOP, // starts over from the first point
+    REVERSE; // drives the route back to the first point, and so on
+
+    public static RouteEnd parse(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown route end: " + name);
+        }
+    }
+}
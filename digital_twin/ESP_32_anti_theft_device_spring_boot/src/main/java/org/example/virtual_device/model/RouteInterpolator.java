@@ -0,0 +1,71 @@
+package org.example.virtual_device.model;
+
+import java.util.Arrays;
+
+// the geometry of a parsed route, computed once and shared like the route: the distance of every point from the first,
+// so a position is a binary search and one interpolation away
+public class RouteInterpolator {
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] distances; // meters along the route, never decreasing
+
+    public RouteInterpolator(double[] latitudes, double[] longitudes) {
+        int size = latitudes.length;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        distances = new double[size];
+        for (int i = 1; i < size; i++) {
+            distances[i] = distances[i - 1] + GreatCircle.distanceMeters(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+    }
+
+    public double getLength() {
+        return distances[distances.length - 1];
+    }
+
+    public RouteCursor cursor(RouteEnd end) {
+        return new Cursor(end);
+    }
+
+    // the segment [i, i + 1] holding the point this far along the route
+    int segment(double distance) {
+        int found = Arrays.binarySearch(distances, distance);
+        int segment = found >= 0 ? found : -found - 2;
+        return Math.max(0, Math.min(segment, distances.length - 2));
+    }
+
+    private class Cursor extends InterpolatingCursor {
+        private final RouteEnd end;
+        private double travelled;
+
+        Cursor(RouteEnd end) {
+            this.end = end;
+            placeAt(latitudes[0], longitudes[0]);
+        }
+
+        @Override
+        public void advance(double meters) {
+            travelled += meters;
+            double length = getLength();
+            if (length == 0)
+                return;
+            double distance = switch (end) {
+                case STOP -> Math.min(travelled, length);
+                case LOOP -> travelled % length;
+                case REVERSE -> {
+                    double lap = travelled % (2 * length);
+                    yield lap <= length ? lap : 2 * length - lap;
+                }
+            };
+            int i = segment(distance);
+            double segmentLength = distances[i + 1] - distances[i];
+            if (segmentLength == 0) {
+                placeAt(latitudes[i], longitudes[i]);
+                return;
+            }
+            placeBetween(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1],
+                    segmentLength / GreatCircle.EARTH_RADIUS_METERS, (distance - distances[i]) / segmentLength);
+        }
+    }
+}
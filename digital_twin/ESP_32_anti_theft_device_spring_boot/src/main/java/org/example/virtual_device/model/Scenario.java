@@ -0,0 +1,90 @@
+package org.example.virtual_device.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.example.virtual_device.UserVariables;
+
+import java.util.Locale;
+
+// a headless load run, read from the JSON file given with --twin.scenario
+@Getter
+@Setter
+@NoArgsConstructor
+public class Scenario {
+    String name = "scenario";
+    int fleetSize; // sensors registered during the ramp-up
+    String tokenPrefix = "twin-"; // tokens are tokenPrefix + 0 .. fleetSize - 1
+    double rampUpPerSecond = 100; // sensors registered per second
+    Wakeup wakeup = new Wakeup(); // time from start until a sensor starts moving
+    double sendIntervalSeconds = UserVariables.delayBetweenSending;
+    double speedKmh = UserVariables.speedKmh;
+    double speedVariation = UserVariables.speedVariation; // each sensor drives at speedKmh times 1 +- up to this
+    String routeEnd = UserVariables.routeEnd; // "stop", "loop" or "reverse"
+    boolean reportByException = UserVariables.reportByException; // send only what changed, see UserVariables
+    double reportDistanceMeters = UserVariables.reportDistanceMeters;
+    double heartbeatSeconds = UserVariables.heartbeatSeconds;
+    double imuSampleRateHz = UserVariables.imuSampleRateHz; // 0 turns the synthetic IMU off
+    double accelThresholdG = UserVariables.accelThresholdG;
+    double armRatio; // share of the sensors armed right after they start
+    double durationSeconds; // simulated time from the first registration until all sensors are stopped
+    Long seed; // same seed, same wake-ups, routes, phases and armed sensors, FleetSettings.defaultSeed() if left out
+    String geofences; // JSON file of safe zones the emitted positions are checked against, see GeofenceEngine.loadZones
+    String alertsTo; // file the alerts expected from the platform are written to as JSON lines
+    String recordTo; // file the emitted telemetry is recorded to, for replaying it later with --twin.replay
+    Double timeCompression; // 1 is real time, 60 a simulated minute per second, 0 as fast as possible, UserVariables.timeCompression if left out
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class Wakeup {
+        String distribution = "uniform"; // "uniform" or "exponential"
+        double minSeconds = UserVariables.minWakeupTime;
+        double maxSeconds = UserVariables.maxWakeupTime;
+        double meanSeconds; // exponential only
+    }
+
+    // intervals are checked as the milliseconds the fleet is run with, what rounds to nothing is rejected
+    public void validate() {
+        if (fleetSize < 0)
+            throw new IllegalArgumentException("Scenario fleetSize must not be negative");
+        if (rampUpPerSecond <= 0)
+            throw new IllegalArgumentException("Scenario rampUpPerSecond must be positive");
+        if (millis(sendIntervalSeconds) < 1)
+            throw new IllegalArgumentException("Scenario sendIntervalSeconds must be at least 1 ms");
+        if (armRatio < 0 || armRatio > 1)
+            throw new IllegalArgumentException("Scenario armRatio must be between 0 and 1");
+        if (durationSeconds <= 0)
+            throw new IllegalArgumentException("Scenario durationSeconds must be positive");
+        if (speedKmh < 0 || speedVariation < 0 || speedVariation > 1)
+            throw new IllegalArgumentException("Scenario needs a speedKmh of at least 0 and a speedVariation between 0 and 1");
+        RouteEnd.parse(routeEnd);
+        if (reportDistanceMeters < 0 || millis(heartbeatSeconds) < 1)
+            throw new IllegalArgumentException("Scenario needs a reportDistanceMeters of at least 0 and a heartbeatSeconds of at least 1 ms");
+        if (imuSampleRateHz < 0 || accelThresholdG <= 0)
+            throw new IllegalArgumentException("Scenario needs an imuSampleRateHz of at least 0 and a positive accelThresholdG");
+        if (millis(wakeup.minSeconds) < 0 || millis(wakeup.maxSeconds) < millis(wakeup.minSeconds))
+            throw new IllegalArgumentException("Scenario wakeup needs 0 <= minSeconds <= maxSeconds");
+        if (wakeupDistribution() == FleetSettings.WakeupDistribution.EXPONENTIAL && millis(wakeup.meanSeconds) <= millis(wakeup.minSeconds))
+            throw new IllegalArgumentException("Scenario exponential wakeup needs meanSeconds at least 1 ms above minSeconds");
+    }
+
+    public FleetSettings toFleetSettings() {
+        return new FleetSettings(millis(sendIntervalSeconds), wakeupDistribution(),
+                millis(wakeup.minSeconds), millis(wakeup.maxSeconds), millis(wakeup.meanSeconds),
+                seed != null ? seed : FleetSettings.defaultSeed(), speedKmh, speedVariation, RouteEnd.parse(routeEnd),
+                reportByException, reportDistanceMeters, millis(heartbeatSeconds), imuSampleRateHz, accelThresholdG);
+    }
+
+    private FleetSettings.WakeupDistribution wakeupDistribution() {
+        try {
+            return FleetSettings.WakeupDistribution.valueOf(wakeup.distribution.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown wakeup distribution: " + wakeup.distribution);
+        }
+    }
+
+    private static long millis(double seconds) {
+        return Math.round(seconds * 1000);
+    }
+}
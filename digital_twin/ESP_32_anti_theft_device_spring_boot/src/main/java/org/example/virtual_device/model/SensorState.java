@@ -0,0 +1,21 @@
+package org.example.virtual_device.model;
+
+public enum SensorState {
+    STOPPED, // registered but not sending
+    IDLE, // sending, disarmed and not moving
+    MOVING, // sending, disarmed and moving
+    ARMED, // sending, armed and not moving
+    ALARM; // sending, armed and moving
+
+    public boolean isActive() {
+        return this != STOPPED;
+    }
+
+    public boolean isArmed() {
+        return this == ARMED || this == ALARM;
+    }
+
+    public boolean isMoving() {
+        return this == MOVING || this == ALARM;
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.virtual_device.model;
+
+import java.util.SplittableRandom;
+
+// a simulated MPU6050 sampled at a fixed rate: sensor noise at rest, a jolt when the device starts moving and vibration
+// while it drives. Samples are generated when the sensor ticks, checked against the firmware's alert threshold and kept
+// in primitive ring buffers, and the window since the previous tick is summarized, so nothing is allocated per sample
+public class SyntheticImu {
+
+    public static final int CAPACITY = 64; // power of two, newest samples kept
+    private static final double TRIANGULAR_SIGMA = Math.sqrt(6); // the difference of two uniforms has a sigma of 1/sqrt(6)
+    private static final double NOISE_G = 0.02;
+    private static final double GYRO_NOISE_DPS = 0.5;
+    private static final double VIBRATION_G = 0.12; // while driving, well under the threshold
+    private static final double JOLT_MIN_G = 2.5; // the movement that sets the alert off
+    private static final double JOLT_MAX_G = 4;
+    private static final double JOLT_HZ = 6;
+    private static final double JOLT_DECAY_SECONDS = 0.25;
+    private static final double GYRO_DPS_PER_G = 40; // rotation that comes with the jolt
+
+    private final float[] accelX = new float[CAPACITY];
+    private final float[] accelY = new float[CAPACITY];
+    private final float[] accelZ = new float[CAPACITY];
+    private final float[] gyroX = new float[CAPACITY];
+    private final float[] gyroY = new float[CAPACITY];
+    private final float[] gyroZ = new float[CAPACITY];
+    private final long periodNanos;
+    private final double thresholdG;
+    private final SplittableRandom random; // only used by the sensor's ticks
+    private volatile long movementNanos = Long.MIN_VALUE; // set by the wake-up, read by the ticks
+    private long samples;
+    private long nextSampleNanos = Long.MIN_VALUE;
+    private boolean alert; // latched like the firmware's inAlert
+    // the jolt of the current movement, drawn by the first tick that sees it
+    private long joltNanos = Long.MIN_VALUE;
+    private double joltG;
+    private double joltX;
+    private double joltY;
+    // the accel magnitude, gravity corrected like on the device, over the samples since the previous tick
+    private int windowSamples;
+    private double windowMin;
+    private double windowMax;
+    private double windowSumSquares;
+
+    public SyntheticImu(double sampleRateHz, double thresholdG, SplittableRandom random) {
+        if (sampleRateHz <= 0)
+            throw new IllegalArgumentException("IMU sample rate must be positive: " + sampleRateHz);
+        periodNanos = Math.max(1, Math.round(1e9 / sampleRateHz));
+        this.thresholdG = thresholdG;
+        this.random = random;
+    }
+
+    // the device starts moving at nanos, the next tick generates the jolt from then on
+    public void startMovement(long nanos) {
+        movementNanos = nanos;
+    }
+
+    // generates and checks the samples up to nanos, returns whether the alert is on
+    public boolean advance(long nanos) {
+        if (nextSampleNanos == Long.MIN_VALUE)
+            nextSampleNanos = nanos;
+        long movement = movementNanos;
+        if (movement != joltNanos) {
+            joltNanos = movement;
+            joltG = JOLT_MIN_G + (JOLT_MAX_G - JOLT_MIN_G) * random.nextDouble();
+            double direction = 2 * Math.PI * random.nextDouble();
+            joltX = Math.cos(direction);
+            joltY = Math.sin(direction);
+        }
+        windowSamples = 0;
+        windowMin = Double.POSITIVE_INFINITY;
+        windowMax = 0;
+        windowSumSquares = 0;
+        for (; nextSampleNanos <= nanos; nextSampleNanos += periodNanos)
+            sample(nextSampleNanos, movement);
+        return alert;
+    }
+
+    private void sample(long nanos, long movement) {
+        double ax = noise(NOISE_G);
+        double ay = noise(NOISE_G);
+        double az = 1 + noise(NOISE_G);
+        double gx = noise(GYRO_NOISE_DPS);
+        double gy = noise(GYRO_NOISE_DPS);
+        double gz = noise(GYRO_NOISE_DPS);
+        if (movement != Long.MIN_VALUE && nanos >= movement) {
+            double seconds = (nanos - movement) / 1e9;
+            // a damped swing, dying out within a second or so
+            double jolt = seconds < 5 * JOLT_DECAY_SECONDS
+                    ? joltG * Math.exp(-seconds / JOLT_DECAY_SECONDS) * Math.sin(2 * Math.PI * JOLT_HZ * seconds) : 0;
+            ax += jolt * joltX + noise(VIBRATION_G);
+            ay += jolt * joltY + noise(VIBRATION_G);
+            az += noise(VIBRATION_G);
+            gz += jolt * GYRO_DPS_PER_G;
+        }
+        int slot = (int) (samples++ & (CAPACITY - 1));
+        accelX[slot] = (float) ax;
+        accelY[slot] = (float) ay;
+        accelZ[slot] = (float) az;
+        gyroX[slot] = (float) gx;
+        gyroY[slot] = (float) gy;
+        gyroZ[slot] = (float) gz;
+
+        double magnitude = Math.sqrt(ax * ax + ay * ay + (az - 1) * (az - 1));
+        if (magnitude > thresholdG)
+            alert = true;
+        windowSamples++;
+        windowMin = Math.min(windowMin, magnitude);
+        windowMax = Math.max(windowMax, magnitude);
+        windowSumSquares += magnitude * magnitude;
+    }
+
+    // roughly normal with the given sigma, bounded and cheaper than nextGaussian
+    private double noise(double sigma) {
+        return (random.nextDouble() - random.nextDouble()) * sigma * TRIANGULAR_SIGMA;
+    }
+
+    public boolean isAlert() {
+        return alert;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public int getWindowSamples() {
+        return windowSamples;
+    }
+
+    public double getWindowMin() {
+        return windowSamples == 0 ? 0 : windowMin;
+    }
+
+    public double getWindowMax() {
+        return windowMax;
+    }
+
+    public double getWindowRms() {
+        return windowSamples == 0 ? 0 : Math.sqrt(windowSumSquares / windowSamples);
+    }
+
+    // the newest sample is 0, older ones up to CAPACITY - 1
+    public float getAccelX(int age) {
+        return accelX[slot(age)];
+    }
+
+    public float getAccelY(int age) {
+        return accelY[slot(age)];
+    }
+
+    public float getAccelZ(int age) {
+        return accelZ[slot(age)];
+    }
+
+    public float getGyroX(int age) {
+        return gyroX[slot(age)];
+    }
+
+    public float getGyroY(int age) {
+        return gyroY[slot(age)];
+    }
+
+    public float getGyroZ(int age) {
+        return gyroZ[slot(age)];
+    }
+
+    private int slot(int age) {
+        if (age < 0 || age >= Math.min(samples, CAPACITY))
+            throw new IllegalArgumentException("No IMU sample " + age + " samples old");
+        return (int) ((samples - 1 - age) & (CAPACITY - 1));
+    }
+}
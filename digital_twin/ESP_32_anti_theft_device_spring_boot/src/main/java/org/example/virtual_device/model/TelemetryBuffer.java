@@ -0,0 +1,128 @@
+package org.example.virtual_device.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// growable byte buffer that is reset and written again instead of being reallocated for every message
+public class TelemetryBuffer {
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int length;
+
+    public TelemetryBuffer(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public TelemetryBuffer reset() {
+        length = 0;
+        return this;
+    }
+
+    public TelemetryBuffer put(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+        return this;
+    }
+
+    public TelemetryBuffer put(byte[] source) {
+        return put(source, 0, source.length);
+    }
+
+    public TelemetryBuffer put(byte[] source, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+        return this;
+    }
+
+    public TelemetryBuffer put(ByteBuffer source, int offset, int count) {
+        ensureCapacity(count);
+        source.get(offset, bytes, length, count);
+        length += count;
+        return this;
+    }
+
+    public TelemetryBuffer put(TelemetryBuffer source) {
+        return put(source.bytes, 0, source.length);
+    }
+
+    public TelemetryBuffer putLong(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE)
+                return put(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            put((byte) '-');
+            value = -value;
+        }
+        ensureCapacity(19);
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    // rounds to at most maxDecimals (up to 9) decimals and leaves out trailing zeros, 12.30 is written as 12.3
+    public TelemetryBuffer putDouble(double value, int maxDecimals) {
+        // values that do not fit a long once scaled are written the slow way, Math.round would saturate them
+        double magnitude = Math.abs(value) * POWERS_OF_TEN[maxDecimals];
+        if (Double.isNaN(value) || Double.isInfinite(value) || magnitude >= 9e18)
+            return put(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+        long scaled = Math.round(magnitude);
+        long unit = (long) POWERS_OF_TEN[maxDecimals];
+        long integer = scaled / unit;
+        long fraction = scaled % unit;
+        if (value < 0 && scaled != 0)
+            put((byte) '-');
+        putLong(integer);
+        if (fraction == 0)
+            return this;
+        int decimals = maxDecimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            decimals--;
+        }
+        ensureCapacity(decimals + 1);
+        bytes[length++] = '.';
+        for (int i = length + decimals - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        length += decimals;
+        return this;
+    }
+
+    public TelemetryBuffer putBoolean(boolean value) {
+        return put(value ? TRUE : FALSE);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+    }
+}
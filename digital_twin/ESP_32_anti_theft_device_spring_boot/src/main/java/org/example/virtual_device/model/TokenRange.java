@@ -0,0 +1,59 @@
+package org.example.virtual_device.model;
+
+import java.util.AbstractList;
+
+// "dev-00000..dev-49999" as a list of tokens that are generated on access instead of stored
+public class TokenRange extends AbstractList<String> {
+    private final String prefix;
+    private final long first;
+    private final int size;
+    private final int width;
+
+    private TokenRange(String prefix, long first, int size, int width) {
+        this.prefix = prefix;
+        this.first = first;
+        this.size = size;
+        this.width = width;
+    }
+
+    public static TokenRange parse(String range, int maxSize) {
+        String[] bounds = range.trim().split("\\.\\.");
+        if (bounds.length != 2)
+            throw new IllegalArgumentException("Invalid token range " + range + ", expected e.g. dev-00000..dev-49999");
+        int fromDigits = trailingDigits(bounds[0]);
+        int toDigits = trailingDigits(bounds[1]);
+        String prefix = bounds[0].substring(0, bounds[0].length() - fromDigits);
+        if (fromDigits == 0 || toDigits == 0 || !prefix.equals(bounds[1].substring(0, bounds[1].length() - toDigits)))
+            throw new IllegalArgumentException("Invalid token range " + range + ", both ends need the same prefix followed by a number");
+        long first = Long.parseLong(bounds[0].substring(prefix.length()));
+        long last = Long.parseLong(bounds[1].substring(prefix.length()));
+        if (last < first || last - first >= maxSize)
+            throw new IllegalArgumentException("Invalid token range " + range + ", it must be ascending and at most " + maxSize + " tokens");
+        // zero padded ranges keep their width, "dev-1..dev-10" is not padded
+        int width = bounds[0].charAt(prefix.length()) == '0' && fromDigits > 1 ? fromDigits : 0;
+        return new TokenRange(prefix, first, (int) (last - first + 1), width);
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        String number = Long.toString(first + index);
+        if (number.length() >= width)
+            return prefix + number;
+        return prefix + "0".repeat(width - number.length()) + number;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private static int trailingDigits(String token) {
+        int digits = 0;
+        while (digits < token.length() && Character.isDigit(token.charAt(token.length() - 1 - digits))) {
+            digits++;
+        }
+        return digits;
+    }
+}
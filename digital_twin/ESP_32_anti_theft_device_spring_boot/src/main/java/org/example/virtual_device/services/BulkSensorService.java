@@ -0,0 +1,57 @@
+package org.example.virtual_device.services;
+
+import jakarta.annotation.PreDestroy;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.BulkResult;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+@Service
+public class BulkSensorService {
+
+    private final ExecutorService executor;
+
+    public BulkSensorService() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(UserVariables.bulkThreads, runnable -> {
+            Thread thread = new Thread(runnable, "fleet-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // applies operation to every token in parallel chunks and passes each finished chunk to chunkResults,
+    // the returned future completes with the number of successful operations once all chunks are done
+    public CompletableFuture<Integer> apply(List<String> tokens, Predicate<String> operation, String okStatus, String failedStatus,
+                                            Consumer<List<BulkResult>> chunkResults) {
+        AtomicInteger succeeded = new AtomicInteger();
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < tokens.size(); from += UserVariables.bulkChunkSize) {
+            List<String> chunk = tokens.subList(from, Math.min(from + UserVariables.bulkChunkSize, tokens.size()));
+            chunks.add(CompletableFuture.runAsync(() -> {
+                List<BulkResult> results = new ArrayList<>(chunk.size());
+                for (String token : chunk) {
+                    boolean ok = operation.test(token);
+                    if (ok)
+                        succeeded.incrementAndGet();
+                    results.add(new BulkResult(token, ok, ok ? okStatus : failedStatus));
+                }
+                chunkResults.accept(results);
+            }, executor));
+        }
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).thenApply(done -> succeeded.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
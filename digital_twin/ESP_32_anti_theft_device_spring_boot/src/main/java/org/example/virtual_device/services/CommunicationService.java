@@ -1,52 +1,191 @@
 package org.example.virtual_device.services;
 
-import lombok.NoArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import org.example.virtual_device.UserVariables;
-import org.example.virtual_device.model.Coordinate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.model.TelemetryBuffer;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.function.BiPredicate;
 
 
 @Service
-@NoArgsConstructor
 public class CommunicationService {
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final TelemetryTransport transport;
+    private final TelemetryBatcher batcher;
+    private final FleetMetrics metrics;
+    private final EventLog eventLog;
+    private final TelemetrySpool spool;
+    private volatile boolean timestamped;
+    private volatile TelemetryRecorder recorder;
+    private volatile TelemetryStage stage;
+    private volatile BiPredicate<String, String> rpcHandler = (accessToken, method) -> false;
 
-    public void sendCoordinate(String accessToken, Coordinate location, boolean motionDetected, boolean armed) {
+    public CommunicationService(TelemetryTransport transport, FleetMetrics metrics, EventLog eventLog) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        batcher = UserVariables.batchingEnabled && transport.supportsBatches()
+                ? new TelemetryBatcher(transport, UserVariables.batchMaxSize, UserVariables.batchLingerMillis, UserVariables.maxInFlightBatches, eventLog)
+                : null;
+        spool = UserVariables.spoolEnabled ? createSpool() : null;
+    }
+
+    public DeviceChannel openChannel(String accessToken) {
+        return new DeviceChannel(accessToken, UserVariables.maxInFlightPerSensor);
+    }
+
+    public void registerDevice(String accessToken) {
+        transport.register(accessToken);
+    }
+
+    public void setRpcHandler(BiPredicate<String, String> rpcHandler) {
+        this.rpcHandler = rpcHandler;
+        transport.setRpcHandler(rpcHandler);
+    }
+
+    // for RPCs that do not arrive through the transport, like the embedded sink's
+    public boolean handleRpc(String accessToken, String method) {
+        return rpcHandler.test(accessToken, method);
+    }
+
+    // readings carry their timestamp only when set, otherwise the platform stamps them on arrival like the firmware's
+    public void setTimestamped(boolean timestamped) {
+        this.timestamped = timestamped;
+    }
+
+    // sensors should slow down, the spool is about to run out of room
+    public boolean isBackpressured() {
+        return spool != null && spool.isFull();
+    }
+
+    // null removes the stage
+    public void setStage(TelemetryStage stage) {
+        this.stage = stage;
+    }
+
+    public synchronized void startRecording(Path file) {
+        if (recorder != null)
+            throw new IllegalStateException("Already recording");
+        recorder = new TelemetryRecorder(file);
+    }
+
+    // returns the number of readings recorded
+    public synchronized long stopRecording() {
+        TelemetryRecorder stopped = recorder;
+        if (stopped == null)
+            return 0;
+        recorder = null;
+        stopped.close();
+        return stopped.getReadings();
+    }
+
+    // fields are the TelemetryEncoder fields to send, ALL_FIELDS unless the sensor reports by exception
+    public void sendCoordinate(DeviceChannel device, int fields, long timestamp, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        TelemetryRecorder recorder = this.recorder;
+        if (recorder != null)
+            recorder.record(device.getAccessToken(), fields, timestamp, latitude, longitude, motionDetected, armed, imu);
+        // while a sensor has readings in the spool its newer ones queue behind them, so they arrive in order
+        if (spool != null && device.getSpooled() > 0) {
+            spool.appendReading(device, fields, timestamp, latitude, longitude, motionDetected, armed, imu);
+            handedOff(device, fields, timestamp, latitude, longitude, motionDetected, armed);
+            return;
+        }
+        if (batcher != null) {
+            if (batcher.add(device, fields, timestamp, latitude, longitude, motionDetected, armed, imu)) {
+                handedOff(device, fields, timestamp, latitude, longitude, motionDetected, armed);
+            } else if (spool != null) {
+                spool.appendReading(device, fields, timestamp, latitude, longitude, motionDetected, armed, imu);
+                handedOff(device, fields, timestamp, latitude, longitude, motionDetected, armed);
+            } else {
+                metrics.recordDropped("batch");
+                if (eventLog.sample(EventLog.Kind.DROPPED))
+                    eventLog.publish("Dropped data for " + device.getAccessToken() + ": all batches are still in flight", true);
+            }
+            return;
+        }
+        TelemetryBuffer payload = device.acquire();
+        if (payload == null) {
+            if (spool != null) {
+                spool.appendReading(device, fields, timestamp, latitude, longitude, motionDetected, armed, imu);
+                handedOff(device, fields, timestamp, latitude, longitude, motionDetected, armed);
+                return;
+            }
+            metrics.recordDropped("inflight");
+            if (eventLog.sample(EventLog.Kind.DROPPED))
+                eventLog.publish("Dropped data for " + device.getAccessToken() + ": previous requests still in flight", true);
+            return;
+        }
+        // spooled readings are sent later and keep the time they were taken
+        if (timestamped || spool != null)
+            TelemetryEncoder.encodeReading(payload, fields, timestamp, latitude, longitude, motionDetected, armed, imu);
+        else
+            TelemetryEncoder.encodeValues(payload, fields, latitude, longitude, motionDetected, armed, imu);
+        // a dropped reading above leaves the change to be reported by the next tick
+        handedOff(device, fields, timestamp, latitude, longitude, motionDetected, armed);
+        send(device, payload);
+    }
+
+    // sends already encoded values, e.g. recorded ones, as a reading of the given time, returns false without sending
+    // while the device has no free buffer or every batch is in flight
+    public boolean sendRecorded(DeviceChannel device, long timestamp, byte[] values, int length) {
+        boolean spooled = spool != null && device.getSpooled() > 0;
+        if (batcher != null && !spooled)
+            return batcher.add(device, timestamp, values, length);
+        TelemetryBuffer payload = device.acquire();
+        if (payload == null)
+            return false;
+        TelemetryEncoder.encodeReading(payload, timestamp, values, length);
+        if (spooled) {
+            spool.appendReading(device, payload.getBytes(), payload.getLength());
+            device.release(payload);
+            return true;
+        }
+        send(device, payload);
+        return true;
+    }
+
+    // the reading is on its way, the stage sees exactly what the platform is sent
+    private void handedOff(DeviceChannel device, int fields, long timestamp, double latitude, double longitude, boolean motionDetected, boolean armed) {
+        device.reported(fields, timestamp, latitude, longitude, motionDetected, armed);
+        TelemetryStage stage = this.stage;
+        if (stage != null)
+            stage.accept(device.getAccessToken(), fields, timestamp, latitude, longitude, motionDetected, armed);
+    }
+
+    private void send(DeviceChannel device, TelemetryBuffer payload) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + accessToken);
-            Map<String, Object> payload = createPayload(location, motionDetected, armed);
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(UserVariables.platformAPIURL, request, String.class);
-            System.out.println(accessToken + " Sent: " + payload + " => Response: " + response.getStatusCode());
-            //System.out.println(accessToken + " " + payload);
+            transport.send(device, payload);
         } catch (Exception e) {
-            System.err.println("Failed to send data: " + e.getMessage());
+            if (spool != null)
+                spool.readingFailed(device, payload.getBytes(), payload.getLength());
+            device.release(payload);
+            eventLog.error(EventLog.Kind.FAILED, "Failed to send data: " + e.getMessage());
         }
     }
 
-    private static Map<String, Object> createPayload(Coordinate location, boolean motionDetected, boolean armed) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("motion_detected", motionDetected);
-        payload.put("gyro_x", 12.3);
-        payload.put("gyro_y", -4.5);
-        payload.put("gyro_z", 0.8);
-        payload.put("armed", armed);
-        if (motionDetected && armed) {
-            payload.put("latitude", location.getLatitude());
-            payload.put("longitude", location.getLongitude());
+    private TelemetrySpool createSpool() {
+        // the spool sends its readings of many sensors together
+        if (!transport.supportsBatches()) {
+            eventLog.error(EventLog.Kind.SYSTEM, "Spool disabled: the " + UserVariables.transport + " transport cannot send batches");
+            return null;
         }
-        return payload;
+        TelemetrySpool spool = new TelemetrySpool(Path.of(UserVariables.spoolDirectory), UserVariables.spoolSegmentBytes, UserVariables.spoolMaxBytes,
+                UserVariables.spoolDrainPerSecond, UserVariables.spoolDrainBatchSize, UserVariables.spoolRetryMillis, 50, transport, metrics, eventLog);
+        transport.setFailureHandler(spool);
+        return spool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopRecording();
+        if (spool != null)
+            spool.close();
+        // the transport itself is shut down by Spring after this service, so the last batch still goes out
+        if (batcher != null)
+            batcher.shutdown();
     }
 }
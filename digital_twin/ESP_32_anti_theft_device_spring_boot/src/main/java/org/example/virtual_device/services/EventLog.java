@@ -0,0 +1,225 @@
+package org.example.virtual_device.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.virtual_device.UserVariables;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// sensor and telemetry threads only count an event and, while the interval's sample budget of its kind lasts,
+// put the line into a bounded ring; one drainer thread hands the lines to the sink in batches, so printing
+// (or the GUI console) never runs on, or slows down, the threads that send
+@Service
+public class EventLog {
+
+    public enum Kind {
+        SENT("sent"),
+        FAILED("failed"),
+        DROPPED("dropped"),
+        SENSOR("sensor events"),
+        ALERT("geofence alerts"),
+        SYSTEM("other");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    public record Line(String text, boolean error) {
+    }
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    private final int mask;
+    private final String[] texts;
+    private final boolean[] errors;
+    // slot i holds sequence s once published[i] == s + 1
+    private final AtomicLongArray published;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private final int samplesPerInterval;
+    private final LongAdder[] counts = new LongAdder[Kind.values().length];
+    private final AtomicIntegerArray sampled = new AtomicIntegerArray(Kind.values().length);
+    private final LongAdder overflowed = new LongAdder();
+    private volatile Consumer<List<Line>> sink = EventLog::print;
+    private volatile long delivered; // every line before this sequence went to the sink
+    private volatile boolean running;
+    private Thread drainer;
+
+    public EventLog() {
+        this(UserVariables.logBufferSize, UserVariables.logSamplesPerInterval);
+    }
+
+    public EventLog(int capacity, int samplesPerInterval) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Event log capacity must be a power of two: " + capacity);
+        mask = capacity - 1;
+        texts = new String[capacity];
+        errors = new boolean[capacity];
+        published = new AtomicLongArray(capacity);
+        this.samplesPerInterval = samplesPerInterval;
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+    }
+
+    // counts the event and tells whether its line should be published, callers build the line only then
+    public boolean sample(Kind kind) {
+        counts[kind.ordinal()].increment();
+        if (sampled.get(kind.ordinal()) >= samplesPerInterval)
+            return false;
+        return sampled.incrementAndGet(kind.ordinal()) <= samplesPerInterval;
+    }
+
+    public void info(Kind kind, String text) {
+        if (sample(kind))
+            publish(text, false);
+    }
+
+    public void error(Kind kind, String text) {
+        if (sample(kind))
+            publish(text, true);
+    }
+
+    public void publish(String text, boolean error) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= texts.length) {
+                overflowed.increment();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        texts[slot] = text;
+        errors[slot] = error;
+        published.lazySet(slot, sequence + 1);
+    }
+
+    // the GUI replaces the default stdout sink, the sink always runs on the drainer thread
+    public void setSink(Consumer<List<Line>> sink) {
+        this.sink = sink;
+    }
+
+    // waits until the drainer handed everything published so far to the sink, e.g. before the application prints its own summary
+    public void flush() {
+        Thread drainer;
+        synchronized (this) {
+            drainer = this.drainer;
+        }
+        if (drainer == null)
+            return;
+        long target = head.get();
+        LockSupport.unpark(drainer);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+        while (delivered < target && drainer.isAlive() && System.nanoTime() - deadline < 0)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    synchronized int drainTo(List<Line> lines, int maxLines) {
+        long next = tail;
+        int drained = 0;
+        while (drained < maxLines) {
+            int slot = (int) next & mask;
+            if (published.get(slot) != next + 1)
+                break;
+            lines.add(new Line(texts[slot], errors[slot]));
+            texts[slot] = null;
+            next++;
+            drained++;
+        }
+        tail = next;
+        return drained;
+    }
+
+    // resets the sample budgets and returns a line accounting for what was counted but not shown, if anything
+    synchronized Line closeInterval(long intervalMillis) {
+        StringBuilder summary = new StringBuilder("Last ").append(intervalMillis).append(" ms:");
+        long hidden = overflowed.sumThenReset();
+        boolean first = true;
+        for (Kind kind : Kind.values()) {
+            long count = counts[kind.ordinal()].sumThenReset();
+            int shown = Math.min(sampled.getAndSet(kind.ordinal(), 0), samplesPerInterval);
+            if (count == 0)
+                continue;
+            hidden += count - shown;
+            summary.append(first ? " " : ", ").append(count).append(' ').append(kind.label);
+            first = false;
+        }
+        if (hidden <= 0)
+            return null;
+        return new Line(summary.append(" (").append(hidden).append(" lines not shown)").toString(), false);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (drainer != null)
+            return;
+        running = true;
+        drainer = new Thread(() -> drain(UserVariables.logIntervalMillis), "event-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    // hands the sink what is left and stops the drainer
+    @PreDestroy
+    public void shutdown() {
+        Thread drainer;
+        synchronized (this) {
+            drainer = this.drainer;
+        }
+        if (drainer == null)
+            return;
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(FLUSH_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(long intervalMillis) {
+        List<Line> lines = new ArrayList<>();
+        long intervalStart = System.nanoTime();
+        boolean last;
+        do {
+            last = !running;
+            drainTo(lines, texts.length);
+            long drained = tail;
+            long now = System.nanoTime();
+            if (now - intervalStart >= TimeUnit.MILLISECONDS.toNanos(intervalMillis)) {
+                intervalStart = now;
+                Line summary = closeInterval(intervalMillis);
+                if (summary != null)
+                    lines.add(summary);
+            }
+            if (!lines.isEmpty()) {
+                try {
+                    sink.accept(lines);
+                } catch (Exception e) {
+                    System.err.println("Event log sink failed: " + e.getMessage());
+                }
+                lines = new ArrayList<>();
+            }
+            delivered = drained;
+            if (!last)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        } while (!last);
+    }
+
+    private static void print(List<Line> lines) {
+        for (Line line : lines)
+            (line.error() ? System.err : System.out).println(line.text());
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.Setter;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.FleetSettings;
+import org.springframework.stereotype.Service;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.random.RandomGenerator;
+
+@Service
+public class FleetEngine {
+
+    @Getter
+    private final CommunicationService communicationService;
+    @Getter
+    private final RouteService routeService;
+    @Getter
+    private final FleetMetrics metrics;
+    @Getter
+    private final EventLog eventLog;
+    @Getter
+    @Setter
+    private volatile FleetSettings settings = FleetSettings.defaults();
+    @Getter
+    private volatile SimulationClock clock;
+
+    public FleetEngine(CommunicationService communicationService, RouteService routeService, FleetMetrics metrics, EventLog eventLog) {
+        this.communicationService = communicationService;
+        this.routeService = routeService;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        useClock(SimulationClock.create(UserVariables.timeCompression, UserVariables.fleetThreads, this::isSaturated, eventLog));
+        Gauge.builder("fleet.scheduler.queue", this, FleetEngine::getQueuedTasks)
+                .description("Sensor ticks and wake-ups waiting for their time").register(metrics.getRegistry());
+    }
+
+    // only while nothing is scheduled, sensors keep the clock they were started on
+    public synchronized void setTimeCompression(double timeCompression) {
+        if (clock.getQueuedTasks() > 0)
+            throw new IllegalStateException("Time compression can only change while no sensor is running");
+        SimulationClock previous = clock;
+        useClock(SimulationClock.create(timeCompression, UserVariables.fleetThreads, this::isSaturated, eventLog));
+        previous.shutdown();
+    }
+
+    public long currentTimeMillis() {
+        return clock.currentTimeMillis();
+    }
+
+    public long nanoTime() {
+        return clock.nanoTime();
+    }
+
+    // a sensor's own random choices, reproducible from the fleet seed and its token whatever order sensors start in
+    public SplittableRandom newRandom(String accessToken) {
+        return new SplittableRandom(settings.getSeed() ^ accessToken.hashCode() * 0x9E3779B97F4A7C15L);
+    }
+
+    public ScheduledFuture<?> scheduleTicks(Runnable tick, long periodMillis, RandomGenerator random) {
+        // random phase so a fleet registered in one burst does not send in one burst every period
+        long phase = random.nextLong(periodMillis);
+        return clock.scheduleAtFixedRate(guarded(() -> {
+            // a full spool holds back the fleet, a sensor's next tick catches up on the time it skipped
+            if (communicationService.isBackpressured())
+                metrics.recordDropped("backpressure");
+            else
+                tick.run();
+        }), phase, periodMillis);
+    }
+
+    public ScheduledFuture<?> scheduleOnce(Runnable task, long delayMillis) {
+        return clock.schedule(guarded(task), delayMillis);
+    }
+
+    public int getQueuedTasks() {
+        return clock.getQueuedTasks();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clock.shutdown();
+    }
+
+    private void useClock(SimulationClock clock) {
+        this.clock = clock;
+        // a compressed clock runs ahead of the platform's, so readings carry their simulated time
+        communicationService.setTimestamped(!clock.isRealTime());
+    }
+
+    private boolean isSaturated() {
+        return metrics.getInFlight() >= UserVariables.virtualMaxInFlight || communicationService.isBackpressured();
+    }
+
+    // an exception escaping a periodic task would silently cancel every later tick of that sensor
+    private Runnable guarded(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                eventLog.error(EventLog.Kind.SYSTEM, "Sensor task failed: " + e.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.Getter;
+import org.example.virtual_device.model.SensorState;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+// the twin's own view of the load it generates, scraped from /actuator/prometheus,
+// so a slowdown can be told apart as simulator side (tick lag, drops) or platform side (latency, statuses)
+@Service
+public class FleetMetrics {
+
+    @Getter
+    private final MeterRegistry registry;
+    private final Timer readingLatency;
+    private final Timer batchLatency;
+    private final Timer tickLag;
+    private final Counter failures;
+    private final Counter suppressed;
+    private final AtomicReferenceArray<Counter> responses = new AtomicReferenceArray<>(600);
+    private final Map<String, Counter> dropped = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public FleetMetrics(MeterRegistry registry, SensorRegistry sensorRegistry) {
+        this.registry = registry;
+        readingLatency = latencyTimer("reading");
+        batchLatency = latencyTimer("batch");
+        tickLag = Timer.builder("fleet.tick.lag")
+                .description("How much later than its send interval after its previous tick a sensor ticked, in simulated time")
+                // every sensor records on every tick, so a few fixed buckets instead of client-side percentiles
+                .serviceLevelObjectives(Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(5))
+                .register(registry);
+        failures = Counter.builder("telemetry.send.responses").tag("status", "error")
+                .description("Sends by response status, error when no response arrived").register(registry);
+        suppressed = Counter.builder("telemetry.suppressed")
+                .description("Readings not sent because nothing changed since the last one, when reporting by exception").register(registry);
+        Gauge.builder("telemetry.send.inflight", inFlight, AtomicInteger::get)
+                .description("Sends waiting for their response").register(registry);
+        Gauge.builder("fleet.sensors", sensorRegistry, SensorRegistry::size)
+                .description("Registered sensors").register(registry);
+        sensorGauge("fleet.sensors.active", "Sensors that are sending", sensorRegistry, SensorState::isActive);
+        sensorGauge("fleet.sensors.armed", "Sensors that are armed", sensorRegistry, SensorState::isArmed);
+        sensorGauge("fleet.sensors.moving", "Sensors that are moving", sensorRegistry, SensorState::isMoving);
+    }
+
+    // returns the start time to pass to recordResponse or recordFailure
+    public long startSend() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void recordResponse(boolean batch, long started, int status) {
+        inFlight.decrementAndGet();
+        (batch ? batchLatency : readingLatency).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        responseCounter(status).increment();
+    }
+
+    public void recordFailure(boolean batch, long started) {
+        inFlight.decrementAndGet();
+        (batch ? batchLatency : readingLatency).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        failures.increment();
+    }
+
+    public void recordDropped(String reason) {
+        dropped.computeIfAbsent(reason, r -> Counter.builder("telemetry.dropped").tag("reason", r)
+                .description("Readings that were never sent").register(registry)).increment();
+    }
+
+    public void recordSuppressed() {
+        suppressed.increment();
+    }
+
+    public void recordTickLag(long lagNanos) {
+        tickLag.record(Math.max(0, lagNanos), TimeUnit.NANOSECONDS);
+    }
+
+    public Timer getReadingLatency() {
+        return readingLatency;
+    }
+
+    public Timer getBatchLatency() {
+        return batchLatency;
+    }
+
+    public Timer getTickLag() {
+        return tickLag;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    // waits until every send got its response or failed, at most timeoutMillis
+    public void awaitResponses(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    // throughput, responses and latencies since startup, for the end of a headless run
+    public void printSummary(EventLog eventLog, double elapsedSeconds) {
+        StringBuilder responses = new StringBuilder();
+        for (Counter counter : registry.find("telemetry.send.responses").counters())
+            if (counter.count() > 0)
+                responses.append(responses.isEmpty() ? "" : ", ").append(counter.getId().getTag("status"))
+                        .append(": ").append((long) counter.count());
+        double dropped = registry.find("telemetry.dropped").counters().stream().mapToDouble(Counter::count).sum();
+
+        eventLog.publish("Sent " + readingLatency.count() + " readings (" + String.format("%.1f", readingLatency.count() / elapsedSeconds)
+                + "/s) and " + batchLatency.count() + " batches, dropped " + (long) dropped
+                + (suppressed.count() > 0 ? ", unchanged and not sent " + (long) suppressed.count() : ""), false);
+        eventLog.publish("Responses: " + (responses.isEmpty() ? "none" : responses), false);
+        printLatency(eventLog, "Reading latency", readingLatency);
+        if (batchLatency.count() > 0)
+            printLatency(eventLog, "Batch latency", batchLatency);
+        printLatency(eventLog, "Tick lag", tickLag);
+    }
+
+    static void printLatency(EventLog eventLog, String label, Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        StringBuilder line = new StringBuilder(label).append(" ms: mean ").append(String.format("%.1f", snapshot.mean(TimeUnit.MILLISECONDS)));
+        // percentiles and max cover the last couple of minutes, like on /actuator/prometheus
+        for (ValueAtPercentile percentile : snapshot.percentileValues())
+            line.append(", p").append(Math.round(percentile.percentile() * 100))
+                    .append(' ').append(String.format("%.1f", percentile.value(TimeUnit.MILLISECONDS)));
+        line.append(", max ").append(String.format("%.1f", snapshot.max(TimeUnit.MILLISECONDS)));
+        eventLog.publish(line.toString(), false);
+    }
+
+    private Timer latencyTimer(String kind) {
+        return Timer.builder("telemetry.send.latency").tag("kind", kind)
+                .description("Time from handing a message to the transport until the platform answered")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter responseCounter(int status) {
+        if (status < 0 || status >= responses.length())
+            return failures;
+        Counter counter = responses.get(status);
+        if (counter == null) {
+            counter = Counter.builder("telemetry.send.responses").tag("status", Integer.toString(status))
+                    .description("Sends by response status, error when no response arrived").register(registry);
+            responses.set(status, counter);
+        }
+        return counter;
+    }
+
+    private void sensorGauge(String name, String description, SensorRegistry sensorRegistry, Predicate<SensorState> counted) {
+        Gauge.builder(name, sensorRegistry, sensors -> sensors.countByState().entrySet().stream()
+                        .filter(entry -> counted.test(entry.getKey())).mapToInt(Map.Entry::getValue).sum())
+                .description(description).register(registry);
+    }
+}
@@ -0,0 +1,54 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// writes the geofence engine's alerts as JSON lines, the expected alerts of a run
+public class GeofenceAlertWriter implements Consumer<GeofenceEngine.Alert>, Closeable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path file;
+    private final BufferedWriter out;
+    private long written;
+
+    public GeofenceAlertWriter(Path file) {
+        this.file = file;
+        try {
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write alerts to " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void accept(GeofenceEngine.Alert alert) {
+        try {
+            out.write(objectMapper.writeValueAsString(alert));
+            out.newLine();
+            written++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write alerts to " + file, e);
+        }
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write alerts to " + file, e);
+        }
+    }
+}
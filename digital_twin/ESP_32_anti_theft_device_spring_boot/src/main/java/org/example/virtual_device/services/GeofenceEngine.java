@@ -0,0 +1,150 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.virtual_device.model.Geofence;
+import org.example.virtual_device.model.GeofenceIndex;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// raises the alerts the platform should raise from what the readings carry: "moving while armed" when a sensor's
+// motion and armed state both turn on, "left safe zone" when a position is outside every zone after one inside a zone.
+// Run as the fleet's TelemetryStage it precomputes a load run's expected alerts, to compare with what the platform fired
+public class GeofenceEngine implements TelemetryStage {
+
+    public enum Kind {
+        LEFT_SAFE_ZONE,
+        MOVING_WHILE_ARMED;
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        }
+    }
+
+    // the position is null when the reading carried none
+    public record Alert(Kind kind, String accessToken, long timestamp, String zone, Double latitude, Double longitude) {
+    }
+
+    private final GeofenceIndex index;
+    private final Consumer<Alert> listener;
+    private final EventLog eventLog;
+    private final Map<String, DeviceState> devices = new ConcurrentHashMap<>();
+    private final Counter[] alerts = new Counter[Kind.values().length];
+    private final Counter positions;
+
+    public GeofenceEngine(GeofenceIndex index, MeterRegistry registry, Consumer<Alert> listener, EventLog eventLog) {
+        this.index = index;
+        this.listener = listener;
+        this.eventLog = eventLog;
+        for (Kind kind : Kind.values())
+            alerts[kind.ordinal()] = Counter.builder("geofence.alerts").tag("kind", kind.name().toLowerCase(Locale.ROOT))
+                    .description("Alerts the geofence engine raised from the emitted readings").register(registry);
+        positions = Counter.builder("geofence.positions")
+                .description("Emitted positions checked against the safe zones").register(registry);
+    }
+
+    @Override
+    public void accept(String accessToken, int fields, long timestamp, double latitude, double longitude, boolean motionDetected, boolean armed) {
+        DeviceState state = devices.get(accessToken);
+        if (state == null)
+            state = devices.computeIfAbsent(accessToken, token -> new DeviceState());
+        // fields a reading leaves out keep their last value, like on the platform
+        if ((fields & TelemetryEncoder.MOTION_FIELD) != 0)
+            state.motionDetected = motionDetected;
+        if ((fields & TelemetryEncoder.ARMED_FIELD) != 0)
+            state.armed = armed;
+        boolean located = (fields & TelemetryEncoder.LOCATION_FIELD) != 0 && motionDetected && armed;
+        boolean alarm = state.motionDetected && state.armed;
+        if (alarm && !state.alarm)
+            raise(Kind.MOVING_WHILE_ARMED, accessToken, timestamp, null, located, latitude, longitude);
+        state.alarm = alarm;
+        if (!located)
+            return;
+        positions.increment();
+        int zone = state.zone;
+        // most positions are still in the zone of the previous one
+        if (zone >= 0 && index.contains(zone, latitude, longitude))
+            return;
+        int current = index.find(latitude, longitude);
+        if (zone >= 0 && current < 0)
+            raise(Kind.LEFT_SAFE_ZONE, accessToken, timestamp, index.getZone(zone).getId(), true, latitude, longitude);
+        state.zone = current;
+    }
+
+    public long getAlerts(Kind kind) {
+        return (long) alerts[kind.ordinal()].count();
+    }
+
+    public int getZones() {
+        return index.size();
+    }
+
+    public void printSummary() {
+        eventLog.publish("Geofence alerts: " + getAlerts(Kind.LEFT_SAFE_ZONE) + " " + Kind.LEFT_SAFE_ZONE.label() + ", "
+                + getAlerts(Kind.MOVING_WHILE_ARMED) + " " + Kind.MOVING_WHILE_ARMED.label() + ", from "
+                + (long) positions.count() + " positions against " + index.size() + " zones", false);
+    }
+
+    private void raise(Kind kind, String accessToken, long timestamp, String zone, boolean located, double latitude, double longitude) {
+        alerts[kind.ordinal()].increment();
+        Alert alert = new Alert(kind, accessToken, timestamp, zone, located ? latitude : null, located ? longitude : null);
+        listener.accept(alert);
+        if (eventLog.sample(EventLog.Kind.ALERT))
+            eventLog.publish("Alert for " + accessToken + ": " + kind.label() + (zone != null ? " " + zone : ""), false);
+    }
+
+    // a JSON array of {"id", "latitude", "longitude", "radiusMeters"} circles and {"id", "points": [[lat, lon], ..]} polygons,
+    // plain paths are files, classpath: and file: prefixes work as usual
+    public static List<Geofence> loadZones(String location) {
+        Resource resource = new DefaultResourceLoader().getResource(location.contains(":") ? location : "file:" + location);
+        JsonNode root;
+        try (InputStream in = resource.getInputStream()) {
+            root = new ObjectMapper().readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read geofences " + location, e);
+        }
+        if (root == null || !root.isArray())
+            throw new IllegalArgumentException("Geofences " + location + " are not a JSON array");
+        List<Geofence> zones = new ArrayList<>(root.size());
+        for (JsonNode zone : root) {
+            String id = zone.path("id").asText("zone-" + zones.size());
+            JsonNode points = zone.get("points");
+            if (points == null) {
+                if (!zone.has("latitude") || !zone.has("longitude") || !zone.has("radiusMeters"))
+                    throw new IllegalArgumentException("Geofence " + id + " needs points or a latitude, longitude and radiusMeters");
+                zones.add(Geofence.circle(id, zone.get("latitude").asDouble(), zone.get("longitude").asDouble(), zone.get("radiusMeters").asDouble()));
+                continue;
+            }
+            double[] latitudes = new double[points.size()];
+            double[] longitudes = new double[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                if (points.get(i).size() != 2)
+                    throw new IllegalArgumentException("Geofence " + id + " has a point that is not [latitude, longitude]");
+                latitudes[i] = points.get(i).get(0).asDouble();
+                longitudes[i] = points.get(i).get(1).asDouble();
+            }
+            zones.add(Geofence.polygon(id, latitudes, longitudes));
+        }
+        return zones;
+    }
+
+    // only touched by the sensor's own ticks, one after another
+    private static class DeviceState {
+        boolean motionDetected;
+        boolean armed;
+        boolean alarm;
+        int zone = -1;
+    }
+}
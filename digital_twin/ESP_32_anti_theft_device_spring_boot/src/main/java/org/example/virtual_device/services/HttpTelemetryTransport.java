@@ -0,0 +1,130 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpTelemetryTransport implements TelemetryTransport {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService responseExecutor = Executors.newFixedThreadPool(UserVariables.httpThreads, runnable -> {
+        Thread thread = new Thread(runnable, "telemetry-http-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // HTTP/1.1 connections are kept alive and reused by the client's pool, so steady state posts do no socket setup
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(UserVariables.connectTimeoutMillis))
+            .executor(responseExecutor)
+            .build();
+    private final Duration readTimeout = Duration.ofMillis(UserVariables.readTimeoutMillis);
+    private final String gatewayAuthorization = "Bearer " + UserVariables.gatewayAccessToken;
+    private final URI platformURI;
+    private final URI platformBatchURI;
+    private final FleetMetrics metrics;
+    private final EventLog eventLog;
+    private final boolean stampSends;
+    private volatile FailureHandler failureHandler;
+
+    public HttpTelemetryTransport(String platformAPIURL, String platformBatchAPIURL, FleetMetrics metrics, EventLog eventLog) {
+        this(platformAPIURL, platformBatchAPIURL, metrics, eventLog, false);
+    }
+
+    // stampSends adds the send time for the embedded sink, which runs in the same JVM and can subtract it
+    public HttpTelemetryTransport(String platformAPIURL, String platformBatchAPIURL, FleetMetrics metrics, EventLog eventLog, boolean stampSends) {
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.stampSends = stampSends;
+        platformURI = URI.create(platformAPIURL);
+        platformBatchURI = URI.create(platformBatchAPIURL);
+    }
+
+    @Override
+    public void send(DeviceChannel device, TelemetryBuffer payload) {
+        HttpRequest request = request(platformURI, device.getAuthorization(), payload);
+        long started = metrics.startSend();
+        // the JDK client reads the body when it writes the request, so the buffer is only released on completion
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    if (e != null || retryable(response.statusCode())) {
+                        FailureHandler failed = failureHandler;
+                        if (failed != null)
+                            failed.readingFailed(device, payload.getBytes(), payload.getLength());
+                    }
+                    if (e != null) {
+                        metrics.recordFailure(false, started);
+                        if (eventLog.sample(EventLog.Kind.FAILED))
+                            eventLog.publish("Failed to send data: " + e.getMessage(), true);
+                    } else {
+                        metrics.recordResponse(false, started, response.statusCode());
+                        // the line is only built for sampled readings, the payload is still in the buffer here
+                        if (response.statusCode() >= 400) {
+                            if (eventLog.sample(EventLog.Kind.FAILED))
+                                eventLog.publish("Failed to send data: " + device.getAccessToken() + " => Response: " + response.statusCode(), true);
+                        } else if (eventLog.sample(EventLog.Kind.SENT))
+                            eventLog.publish(device.getAccessToken() + " Sent: " + payload + " => Response: " + response.statusCode(), false);
+                    }
+                    device.release(payload);
+                });
+    }
+
+    @Override
+    public void sendBatch(TelemetryBuffer batch, int readings, Runnable done) {
+        HttpRequest request = request(platformBatchURI, gatewayAuthorization, batch);
+        long started = metrics.startSend();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, e) -> {
+                    if (e != null || retryable(response.statusCode())) {
+                        FailureHandler failed = failureHandler;
+                        if (failed != null)
+                            failed.batchFailed(done, batch.getBytes(), batch.getLength(), readings);
+                    }
+                    done.run();
+                    if (e != null) {
+                        metrics.recordFailure(true, started);
+                        eventLog.error(EventLog.Kind.FAILED, "Failed to send batch of " + readings + " readings: " + e.getMessage());
+                    } else {
+                        metrics.recordResponse(true, started, response.statusCode());
+                        if (response.statusCode() >= 400)
+                            eventLog.error(EventLog.Kind.FAILED, "Failed to send batch of " + readings + " readings => Response: " + response.statusCode());
+                        else
+                            eventLog.info(EventLog.Kind.SENT, "Sent batch of " + readings + " readings => Response: " + response.statusCode());
+                    }
+                });
+    }
+
+    @Override
+    public void setFailureHandler(FailureHandler failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    @Override
+    public void shutdown() {
+        responseExecutor.shutdownNow();
+    }
+
+    // the platform was unreachable or overloaded, unlike e.g. 400 or 401 sending the same again can succeed
+    private static boolean retryable(int status) {
+        return status >= 500 || status == 429 || status == 408;
+    }
+
+    private HttpRequest request(URI uri, String authorization, TelemetryBuffer body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(readTimeout)
+                .header("Content-Type", "application/json")
+                .header("Authorization", authorization);
+        if (stampSends)
+            request.header(TelemetrySink.SENT_HEADER, Long.toString(System.nanoTime()));
+        return request.POST(HttpRequest.BodyPublishers.ofByteArray(body.getBytes(), 0, body.getLength())).build();
+    }
+}
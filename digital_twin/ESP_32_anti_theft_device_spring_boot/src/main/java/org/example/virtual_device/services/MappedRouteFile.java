@@ -0,0 +1,379 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.GreatCircle;
+import org.example.virtual_device.model.InterpolatingCursor;
+import org.example.virtual_device.model.RouteCursor;
+import org.example.virtual_device.model.RouteEnd;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.LongPredicate;
+
+// an external route dataset read straight from a memory mapping, so neither opening it nor driving sensors along
+// it copies points to the heap. Routes are found on first use and their points are parsed as cursors reach them.
+//  .txt  "latitude, longitude" lines, an empty line starts the next route
+//  .csv  "latitude,longitude" or "route,latitude,longitude[,...]" lines, a new route value or an empty line
+//        starts the next route, a first line that does not start with a number is a header
+//  .gpx  every <trkseg> is a route of its <trkpt lat=".." lon=".."> points
+public class MappedRouteFile {
+
+    private static final int SEGMENT_BITS = 30; // a single mapping is limited to 2 GB
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private enum Format {TXT, CSV, GPX}
+
+    private final Path path;
+    private final Format format;
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private final EventLog eventLog;
+    // route i is in bytes [routeStarts[i], routeEnds[i])
+    private long[] routeStarts;
+    private long[] routeEnds;
+    private int routeCount = -1;
+    private boolean routeColumn;
+
+    public MappedRouteFile(Path path, EventLog eventLog) {
+        this.path = path;
+        this.eventLog = eventLog;
+        String fileName = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        format = fileName.endsWith(".gpx") ? Format.GPX : fileName.endsWith(".csv") ? Format.CSV : Format.TXT;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_MASK + 1, size - offset));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized int getRouteCount() {
+        if (routeCount < 0)
+            index();
+        return routeCount;
+    }
+
+    public RouteCursor cursor(int route, RouteEnd routeEnd) {
+        if (route < 0 || route >= getRouteCount())
+            throw new IndexOutOfBoundsException("Route " + route + " of " + path + " has " + routeCount + " routes");
+        return new MappedCursor(routeStarts[route], routeEnds[route], routeEnd);
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + (routeCount < 0 ? "not indexed" : routeCount + " routes") + ")";
+    }
+
+    private byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private void index() {
+        routeStarts = new long[16];
+        routeEnds = new long[16];
+        routeCount = 0;
+        if (format == Format.GPX)
+            indexGpx();
+        else
+            indexLines();
+        if (routeCount == 0)
+            throw new IllegalArgumentException("No route points in " + path);
+        eventLog.info(EventLog.Kind.SYSTEM, "Indexed " + routeCount + " routes in " + path);
+    }
+
+    private void addRoute(long start, long end) {
+        if (routeCount == routeStarts.length) {
+            routeStarts = Arrays.copyOf(routeStarts, routeCount * 2);
+            routeEnds = Arrays.copyOf(routeEnds, routeCount * 2);
+        }
+        routeStarts[routeCount] = start;
+        routeEnds[routeCount] = end;
+        routeCount++;
+    }
+
+    private void indexLines() {
+        long routeStart = -1;
+        long previousId = -1;
+        int previousIdLength = 0;
+        boolean firstLine = true;
+        for (long position = 0, lineEnd; position < size; position = lineEnd + 1) {
+            lineEnd = lineEnd(position);
+            long content = skipSpaces(position, lineEnd);
+            if (content == lineEnd) {
+                if (routeStart >= 0)
+                    addRoute(routeStart, position);
+                routeStart = -1;
+                continue;
+            }
+            if (firstLine) {
+                firstLine = false;
+                routeColumn = format == Format.CSV && columns(content, lineEnd) >= 3;
+                // a header has column names, not numbers
+                if (find(this::isDigit, content, lineEnd) == lineEnd)
+                    continue;
+            }
+            int idLength = routeColumn ? (int) (find((byte) ',', content, lineEnd) - content) : 0;
+            if (routeStart >= 0 && routeColumn && !sameBytes(previousId, previousIdLength, content, idLength)) {
+                addRoute(routeStart, position);
+                routeStart = -1;
+            }
+            if (routeStart < 0)
+                routeStart = position;
+            previousId = content;
+            previousIdLength = idLength;
+        }
+        if (routeStart >= 0)
+            addRoute(routeStart, size);
+    }
+
+    private void indexGpx() {
+        long position = 0;
+        while ((position = find("<trkseg", position, size)) < size) {
+            long end = find("</trkseg", position, size);
+            if (find("<trkpt", position, end) < end)
+                addRoute(position, end);
+            position = end;
+        }
+    }
+
+    private long lineEnd(long position) {
+        return find((byte) '\n', position, size);
+    }
+
+    private long skipSpaces(long position, long end) {
+        while (position < end && (byteAt(position) == ' ' || byteAt(position) == '\t' || byteAt(position) == '\r')) {
+            position++;
+        }
+        return position;
+    }
+
+    private int columns(long position, long end) {
+        int columns = 1;
+        for (; position < end; position++) {
+            if (byteAt(position) == ',')
+                columns++;
+        }
+        return columns;
+    }
+
+    private boolean sameBytes(long first, int firstLength, long second, int secondLength) {
+        if (firstLength != secondLength)
+            return false;
+        for (int i = 0; i < firstLength; i++) {
+            if (byteAt(first + i) != byteAt(second + i))
+                return false;
+        }
+        return true;
+    }
+
+    private long find(byte b, long position, long end) {
+        while (position < end && byteAt(position) != b) {
+            position++;
+        }
+        return position;
+    }
+
+    private long find(LongPredicate matches, long position, long end) {
+        while (position < end && !matches.test(position)) {
+            position++;
+        }
+        return position;
+    }
+
+    private boolean isDigit(long position) {
+        byte b = byteAt(position);
+        return b >= '0' && b <= '9';
+    }
+
+    private long find(String text, long position, long end) {
+        for (; position + text.length() <= end; position++) {
+            int i = 0;
+            while (i < text.length() && byteAt(position + i) == text.charAt(i)) {
+                i++;
+            }
+            if (i == text.length())
+                return position;
+        }
+        return end;
+    }
+
+    private static boolean startsNumber(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+    }
+
+    // walks the segment between the last two points it read and only reads on when it drives past the second,
+    // a streamed route has no distances up front and cannot be driven backwards, so REVERSE loops like LOOP
+    private class MappedCursor extends InterpolatingCursor {
+        private final long start;
+        private final long end;
+        private final RouteEnd routeEnd;
+        private long next;
+        private double latitude; // the point readPoint parsed last
+        private double longitude;
+        // parseNumber reports where the number ended here, so parsing needs no allocation
+        private long parsedEnd;
+        private double fromLatitude;
+        private double fromLongitude;
+        private double toLatitude;
+        private double toLongitude;
+        private double segment; // meters from the "from" to the "to" point
+        private double offset; // meters driven along the segment
+
+        MappedCursor(long start, long end, RouteEnd routeEnd) {
+            this.start = start;
+            this.end = end;
+            this.routeEnd = routeEnd;
+            if (!restart())
+                throw new IllegalArgumentException("Route at byte " + start + " of " + path + " has no points");
+            advance(0);
+        }
+
+        @Override
+        public void advance(double meters) {
+            offset += meters;
+            boolean restarted = false;
+            while (offset >= segment) {
+                if (!readPoint()) {
+                    // a route shorter than one step stays at its end until the next one
+                    if (routeEnd == RouteEnd.STOP || restarted) {
+                        offset = segment;
+                        break;
+                    }
+                    offset -= segment;
+                    restart();
+                    restarted = true;
+                    continue;
+                }
+                offset -= segment;
+                fromLatitude = toLatitude;
+                fromLongitude = toLongitude;
+                toLatitude = latitude;
+                toLongitude = longitude;
+                segment = GreatCircle.distanceMeters(fromLatitude, fromLongitude, toLatitude, toLongitude);
+            }
+            if (segment == 0)
+                placeAt(toLatitude, toLongitude);
+            else
+                placeBetween(fromLatitude, fromLongitude, toLatitude, toLongitude, segment / GreatCircle.EARTH_RADIUS_METERS, offset / segment);
+        }
+
+        // back on the first point, as a segment of length zero that ends there
+        private boolean restart() {
+            next = start;
+            if (!readPoint())
+                return false;
+            fromLatitude = toLatitude = latitude;
+            fromLongitude = toLongitude = longitude;
+            segment = 0;
+            return true;
+        }
+
+        private boolean readPoint() {
+            return format == Format.GPX ? readGpxPoint() : readLinePoint();
+        }
+
+        private boolean readLinePoint() {
+            while (next < end) {
+                long lineEnd = Math.min(lineEnd(next), end);
+                long content = skipSpaces(next, lineEnd);
+                next = lineEnd + 1;
+                if (content == lineEnd || !routeColumn && !startsNumber(byteAt(content)))
+                    continue;
+                if (routeColumn)
+                    content = find((byte) ',', content, lineEnd) + 1;
+                double parsedLatitude = parseNumber(skipSpaces(content, lineEnd), lineEnd);
+                long comma = find((byte) ',', parsedEnd, lineEnd);
+                if (comma == lineEnd)
+                    continue;
+                longitude = parseNumber(skipSpaces(comma + 1, lineEnd), lineEnd);
+                latitude = parsedLatitude;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean readGpxPoint() {
+            long point = find("<trkpt", next, end);
+            if (point == end) {
+                next = end;
+                return false;
+            }
+            long tagEnd = find((byte) '>', point, end);
+            latitude = parseNumber(attributeValue("lat=", point, tagEnd), tagEnd);
+            longitude = parseNumber(attributeValue("lon=", point, tagEnd), tagEnd);
+            next = tagEnd;
+            return true;
+        }
+
+        private long attributeValue(String attribute, long position, long end) {
+            long found = find(attribute, position, end);
+            // "lat=" must not match the end of another attribute name
+            while (found < end && byteAt(found - 1) > ' ') {
+                found = find(attribute, found + 1, end);
+            }
+            if (found == end)
+                throw new IllegalArgumentException("No " + attribute + " in <trkpt at byte " + position + " of " + path);
+            // skips the opening quote, which may be ' or "
+            return found + attribute.length() + 1;
+        }
+
+        private double parseNumber(long position, long limit) {
+            boolean negative = false;
+            if (position < limit && (byteAt(position) == '-' || byteAt(position) == '+'))
+                negative = byteAt(position++) == '-';
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = 0;
+            boolean fraction = false;
+            for (; position < limit; position++) {
+                byte b = byteAt(position);
+                if (b >= '0' && b <= '9') {
+                    // digits beyond what a long holds do not change a coordinate
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        digits++;
+                        if (fraction)
+                            decimals++;
+                    } else if (!fraction) {
+                        decimals--;
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else {
+                    break;
+                }
+            }
+            if (position < limit && (byteAt(position) == 'e' || byteAt(position) == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < limit && (byteAt(position) == '-' || byteAt(position) == '+'))
+                    negativeExponent = byteAt(position++) == '-';
+                int exponent = 0;
+                for (; position < limit && byteAt(position) >= '0' && byteAt(position) <= '9'; position++) {
+                    exponent = exponent * 10 + (byteAt(position) - '0');
+                }
+                decimals += negativeExponent ? exponent : -exponent;
+            }
+            parsedEnd = position;
+            if (digits == 0)
+                throw new IllegalArgumentException("Expected a number at byte " + position + " of " + path);
+            double value = decimals >= 0 && decimals < POWERS_OF_TEN.length ? mantissa / POWERS_OF_TEN[decimals]
+                    : mantissa * Math.pow(10, -decimals);
+            return negative ? -value : value;
+        }
+    }
+}
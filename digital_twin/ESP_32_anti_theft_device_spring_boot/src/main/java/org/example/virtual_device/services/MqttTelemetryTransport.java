@@ -0,0 +1,270 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+// speaks the ThingsBoard device MQTT API, either with one connection per sensor like the firmware does,
+// or with all sensors multiplexed over one connection through the gateway API
+public class MqttTelemetryTransport implements TelemetryTransport {
+
+    public static final String TELEMETRY_TOPIC = "v1/devices/me/telemetry";
+    public static final String RPC_REQUEST_TOPIC = "v1/devices/me/rpc/request/+";
+    public static final String RPC_RESPONSE_PREFIX = "v1/devices/me/rpc/response/";
+    public static final String GATEWAY_CONNECT_TOPIC = "v1/gateway/connect";
+    public static final String GATEWAY_TELEMETRY_TOPIC = "v1/gateway/telemetry";
+    public static final String GATEWAY_RPC_TOPIC = "v1/gateway/rpc";
+
+    private static final byte[] TS = "{\"ts\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VALUES = ",\"values\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BATCH_END = "]}".getBytes(StandardCharsets.US_ASCII);
+
+    private final String brokerURL;
+    private final int qos;
+    private final FleetMetrics metrics;
+    private final EventLog eventLog;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, MqttAsyncClient> deviceClients = new ConcurrentHashMap<>();
+    private final Set<String> gatewayDevices = ConcurrentHashMap.newKeySet();
+    private final MqttAsyncClient gatewayClient;
+    private volatile BiPredicate<String, String> rpcHandler = (accessToken, method) -> false;
+    private volatile FailureHandler failureHandler;
+
+    public MqttTelemetryTransport(String brokerURL, int qos, boolean gateway, FleetMetrics metrics, EventLog eventLog) {
+        this.brokerURL = brokerURL;
+        this.qos = qos;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        gatewayClient = gateway ? connect(null, UserVariables.gatewayAccessToken, GATEWAY_RPC_TOPIC) : null;
+    }
+
+    @Override
+    public void register(String accessToken) {
+        if (gatewayClient != null)
+            connectGatewayDevice(accessToken);
+        else
+            deviceClients.computeIfAbsent(accessToken, token -> connect(token, token, RPC_REQUEST_TOPIC));
+    }
+
+    @Override
+    public void setRpcHandler(BiPredicate<String, String> rpcHandler) {
+        this.rpcHandler = rpcHandler;
+    }
+
+    @Override
+    public void setFailureHandler(FailureHandler failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    @Override
+    public boolean supportsBatches() {
+        // a batch holds many sensors, a device connection can only publish for its own sensor
+        return gatewayClient != null;
+    }
+
+    // Paho keeps the payload array until the broker acknowledges it, so it gets a copy and the buffer goes back right away
+    @Override
+    public void send(DeviceChannel device, TelemetryBuffer payload) {
+        byte[] message;
+        int start = 1 + device.getBatchKey().length;
+        int end;
+        if (gatewayClient != null) {
+            TelemetryBuffer reading = new TelemetryBuffer(payload.getLength() + device.getBatchKey().length + 48);
+            reading.put((byte) '{').put(device.getBatchKey());
+            // the gateway format always has a timestamp, simulated readings bring their own
+            if (TelemetryEncoder.isReading(payload))
+                reading.put(payload);
+            else
+                reading.put(TS).putLong(System.currentTimeMillis()).put(VALUES).put(payload).put((byte) '}');
+            end = reading.getLength();
+            message = reading.put(BATCH_END).toByteArray();
+        } else {
+            end = 0;
+            message = payload.toByteArray();
+        }
+        device.release(payload);
+        if (gatewayClient != null) {
+            connectGatewayDevice(device.getAccessToken());
+            // the spool is given the reading without the gateway envelope, as the device's own
+            publish(gatewayClient, GATEWAY_TELEMETRY_TOPIC, message, device.getAccessToken(),
+                    handler -> handler.readingFailed(device, Arrays.copyOfRange(message, start, end), end - start), null);
+        } else {
+            register(device.getAccessToken());
+            publish(deviceClients.get(device.getAccessToken()), TELEMETRY_TOPIC, message, device.getAccessToken(), handler -> handler.readingFailed(device, message, message.length), null);
+        }
+    }
+
+    @Override
+    public void sendBatch(TelemetryBuffer batch, int readings, Runnable done) {
+        // supportsBatches() keeps batches away from device connections
+        if (gatewayClient == null)
+            throw new IllegalStateException("MQTT device connections cannot send batches");
+        byte[] message = batch.toByteArray();
+        publish(gatewayClient, GATEWAY_TELEMETRY_TOPIC, message, readings + " readings", handler -> handler.batchFailed(done, message, message.length, readings), done);
+    }
+
+    @Override
+    public void shutdown() {
+        List<MqttAsyncClient> clients = new ArrayList<>(deviceClients.values());
+        if (gatewayClient != null)
+            clients.add(gatewayClient);
+        for (MqttAsyncClient client : clients) {
+            try {
+                client.disconnectForcibly(0, 1000);
+                client.close();
+            } catch (MqttException ignored) {
+            }
+        }
+    }
+
+    private MqttAsyncClient connect(String accessToken, String userName, String rpcTopic) {
+        try {
+            String clientId = accessToken == null ? "twin-gateway" : "twin-" + accessToken;
+            MqttAsyncClient client = new MqttAsyncClient(brokerURL, clientId, new MemoryPersistence());
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setUserName(userName);
+            // persistent session, the broker keeps the RPC subscription and queued RPCs while a sensor reconnects
+            options.setCleanSession(false);
+            options.setAutomaticReconnect(true);
+            options.setConnectionTimeout(Math.max(1, UserVariables.connectTimeoutMillis / 1000));
+            options.setMaxInflight(UserVariables.mqttMaxInflight);
+            client.setCallback(new MqttCallbackExtended() {
+                @Override
+                public void connectComplete(boolean reconnect, String serverURI) {
+                    try {
+                        client.subscribe(rpcTopic, qos);
+                    } catch (MqttException e) {
+                        eventLog.error(EventLog.Kind.SYSTEM, "Failed to subscribe " + clientId + " to RPC: " + e.getMessage());
+                    }
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                    eventLog.error(EventLog.Kind.SYSTEM, "MQTT connection of " + clientId + " lost: " + cause.getMessage());
+                }
+
+                @Override
+                public void messageArrived(String topic, MqttMessage message) {
+                    if (accessToken == null)
+                        handleGatewayRpc(message);
+                    else
+                        handleDeviceRpc(accessToken, topic, message);
+                }
+
+                @Override
+                public void deliveryComplete(IMqttDeliveryToken token) {
+                }
+            });
+            client.connect(options);
+            return client;
+        } catch (MqttException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void connectGatewayDevice(String accessToken) {
+        if (gatewayDevices.add(accessToken))
+            publish(gatewayClient, GATEWAY_CONNECT_TOPIC, Map.of("device", accessToken), accessToken);
+    }
+
+    private void handleDeviceRpc(String accessToken, String topic, MqttMessage message) {
+        try {
+            String method = objectMapper.readTree(message.getPayload()).path("method").asText();
+            if (rpcHandler.test(accessToken, method)) {
+                String requestId = topic.substring(topic.lastIndexOf('/') + 1);
+                publish(deviceClients.get(accessToken), RPC_RESPONSE_PREFIX + requestId, Map.of("armed", "armDevice".equals(method)), accessToken);
+            }
+        } catch (Exception e) {
+            eventLog.error(EventLog.Kind.SYSTEM, "Invalid RPC for " + accessToken + ": " + e.getMessage());
+        }
+    }
+
+    private void handleGatewayRpc(MqttMessage message) {
+        try {
+            JsonNode request = objectMapper.readTree(message.getPayload());
+            String accessToken = request.path("device").asText();
+            JsonNode data = request.path("data");
+            String method = data.path("method").asText();
+            if (rpcHandler.test(accessToken, method)) {
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("device", accessToken);
+                response.put("id", data.path("id").asInt());
+                response.put("data", Map.of("armed", "armDevice".equals(method)));
+                publish(gatewayClient, GATEWAY_RPC_TOPIC, response, accessToken);
+            }
+        } catch (Exception e) {
+            eventLog.error(EventLog.Kind.SYSTEM, "Invalid gateway RPC: " + e.getMessage());
+        }
+    }
+
+    private void publish(MqttAsyncClient client, String topic, Object payload, String sender) {
+        try {
+            publish(client, topic, objectMapper.writeValueAsBytes(payload), sender, null, null);
+        } catch (Exception e) {
+            eventLog.error(EventLog.Kind.FAILED, "Failed to send data: " + e.getMessage());
+        }
+    }
+
+    // telemetry passes what to tell the failure handler if it is not delivered and what to run once it is answered
+    private void publish(MqttAsyncClient client, String topic, byte[] payload, String sender, Consumer<FailureHandler> failure, Runnable done) {
+        if (!client.isConnected()) {
+            if (!failed(failure))
+                metrics.recordDropped("disconnected");
+            if (eventLog.sample(EventLog.Kind.DROPPED))
+                eventLog.publish("Dropped data for " + sender + ": MQTT client is not connected", true);
+            if (done != null)
+                done.run();
+            return;
+        }
+        boolean batch = GATEWAY_TELEMETRY_TOPIC.equals(topic);
+        long started = metrics.startSend();
+        try {
+            // completes on PUBACK for QoS 1 and 2, right after writing for QoS 0
+            client.publish(topic, payload, qos, false, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    metrics.recordResponse(batch, started, 200);
+                    if (done != null)
+                        done.run();
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    metrics.recordFailure(batch, started);
+                    failed(failure);
+                    if (done != null)
+                        done.run();
+                }
+            });
+        } catch (Exception e) {
+            // e.g. more publishes in flight than mqttMaxInflight, the listener is never called so the send ends here
+            metrics.recordFailure(batch, started);
+            eventLog.error(EventLog.Kind.FAILED, "Failed to send data: " + e.getMessage());
+            failed(failure);
+            if (done != null)
+                done.run();
+            return;
+        }
+        if (eventLog.sample(EventLog.Kind.SENT))
+            eventLog.publish(sender + " Published: " + new String(payload, StandardCharsets.UTF_8) + " => " + topic, false);
+    }
+
+    // returns whether a failure handler took the message
+    private boolean failed(Consumer<FailureHandler> failure) {
+        FailureHandler handler = failureHandler;
+        if (failure == null || handler == null)
+            return false;
+        failure.accept(handler);
+        return true;
+    }
+}
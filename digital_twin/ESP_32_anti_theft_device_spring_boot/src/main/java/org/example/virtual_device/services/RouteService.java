@@ -1,37 +1,87 @@
 package org.example.virtual_device.services;
 
+import lombok.Getter;
 import org.example.virtual_device.UserVariables;
-import org.example.virtual_device.model.Coordinate;
+import org.example.virtual_device.model.Route;
+import org.example.virtual_device.model.RouteCursor;
+import org.example.virtual_device.model.RouteEnd;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.random.RandomGenerator;
 
+// parses every bundled route once at startup and maps external datasets without reading them,
+// sensors share the parsed routes and stream the mapped ones through their own cursor
 @Service
 public class RouteService {
 
-    public static List<Coordinate> generateRoute() {
-        List<Coordinate> route = new ArrayList<>();
-        String fileName = getRandomSetElement(UserVariables.routeFileNames);
-        try (InputStream in = RouteService.class.getResourceAsStream("/routes/" + fileName)) {
-            assert in != null;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] split = line.trim().split(", ");
-                    Double latitude = Double.parseDouble(split[0]);
-                    Double longitude = Double.parseDouble(split[1]);
-                    route.add(new Coordinate(latitude, longitude));
-                }
+    @Getter
+    private final List<Route> routes;
+    @Getter
+    private final List<MappedRouteFile> externalRoutes;
 
-            }
+    @Autowired
+    public RouteService(EventLog eventLog) {
+        this(UserVariables.routeFileNames, UserVariables.externalRouteFiles, eventLog);
+    }
+
+    public RouteService(List<String> routeFileNames, List<String> externalRouteFiles, EventLog eventLog) {
+        List<Route> loaded = new ArrayList<>();
+        for (String fileName : routeFileNames) {
+            loaded.add(loadRoute(fileName));
+        }
+        routes = List.copyOf(loaded);
+        List<MappedRouteFile> mapped = new ArrayList<>();
+        for (String fileName : externalRouteFiles) {
+            mapped.add(new MappedRouteFile(Path.of(fileName), eventLog));
+        }
+        externalRoutes = List.copyOf(mapped);
+        if (routes.isEmpty() && externalRoutes.isEmpty())
+            throw new IllegalStateException("No routes configured");
+    }
+
+    // every bundled route and every external file is equally likely, an external file is indexed the first time it is picked
+    public RouteCursor newCursor(RandomGenerator random, RouteEnd end) {
+        int source = random.nextInt(routes.size() + externalRoutes.size());
+        if (source < routes.size())
+            return routes.get(source).cursor(end);
+        MappedRouteFile file = externalRoutes.get(source - routes.size());
+        return file.cursor(random.nextInt(file.getRouteCount()), end);
+    }
+
+    public static Route loadRoute(String fileName) {
+        try (InputStream in = RouteService.class.getResourceAsStream("/routes/" + fileName)) {
+            if (in == null)
+                throw new IllegalArgumentException("Route " + fileName + " not found in /routes");
+            return parseRoute(fileName, in);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
-        return route;
     }
 
-    private static <E> E getRandomSetElement(List<E> list) {
-        return list.stream().skip(new Random().nextInt(list.size())).findFirst().orElse(null);
+    // lines are "latitude, longitude"
+    public static Route parseRoute(String name, InputStream in) throws IOException {
+        double[] latitudes = new double[64];
+        double[] longitudes = new double[64];
+        int size = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma < 0)
+                    continue;
+                if (size == latitudes.length) {
+                    latitudes = Arrays.copyOf(latitudes, size * 2);
+                    longitudes = Arrays.copyOf(longitudes, size * 2);
+                }
+                latitudes[size] = Double.parseDouble(line.substring(0, comma).trim());
+                longitudes[size] = Double.parseDouble(line.substring(comma + 1).trim());
+                size++;
+            }
+        }
+        return new Route(name, Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size));
     }
 }
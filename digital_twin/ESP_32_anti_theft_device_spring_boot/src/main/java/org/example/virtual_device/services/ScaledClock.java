@@ -0,0 +1,72 @@
+package org.example.virtual_device.services;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// wall-clock scheduling with every delay divided by the compression factor, factor 1 is plain real time
+public class ScaledClock implements SimulationClock {
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final double factor;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    public ScaledClock(int threads, double factor) {
+        if (factor <= 0)
+            throw new IllegalArgumentException("Time compression must be positive: " + factor);
+        this.factor = factor;
+        AtomicInteger threadCount = new AtomicInteger();
+        scheduler = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "fleet-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // stopped sensors must not leave their cancelled tasks in the queue until the next run time
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        if (factor == 1)
+            return System.currentTimeMillis();
+        return startMillis + (long) ((System.nanoTime() - startNanos) * factor / 1_000_000);
+    }
+
+    @Override
+    public long nanoTime() {
+        if (factor == 1)
+            return System.nanoTime() - startNanos;
+        return (long) ((System.nanoTime() - startNanos) * factor);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        return scheduler.scheduleAtFixedRate(task, wallNanos(initialDelayMillis), Math.max(1, wallNanos(periodMillis)), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return scheduler.schedule(task, wallNanos(delayMillis), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int getQueuedTasks() {
+        return scheduler.getQueue().size();
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return factor == 1;
+    }
+
+    @Override
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private long wallNanos(long simulatedMillis) {
+        return (long) (simulatedMillis * 1_000_000 / factor);
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.bean.Sensor;
+import org.example.virtual_device.model.SensorState;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ConcurrentHashMap locks single bins on writes and never locks on reads, so concurrent registrations of
+// different tokens do not wait for each other and iteration from the GUI or metrics never blocks them
+@Service
+public class SensorRegistry {
+
+    private final Map<String, Sensor> sensors = new ConcurrentHashMap<>(1024);
+    private final Map<String, Sensor> view = Collections.unmodifiableMap(sensors);
+
+    // returns false and leaves the registered sensor untouched if the token is taken
+    public boolean register(Sensor sensor) {
+        return sensors.putIfAbsent(sensor.getAccessToken(), sensor) == null;
+    }
+
+    public Sensor get(String accessToken) {
+        return sensors.get(accessToken);
+    }
+
+    public Map<String, Sensor> getSensors() {
+        return view;
+    }
+
+    public int size() {
+        return sensors.size();
+    }
+
+    public Map<SensorState, Integer> countByState() {
+        int[] counts = new int[SensorState.values().length];
+        for (Sensor sensor : sensors.values()) {
+            counts[sensor.getState().ordinal()]++;
+        }
+        Map<SensorState, Integer> byState = new EnumMap<>(SensorState.class);
+        for (SensorState state : SensorState.values()) {
+            byState.put(state, counts[state.ordinal()]);
+        }
+        return byState;
+    }
+}
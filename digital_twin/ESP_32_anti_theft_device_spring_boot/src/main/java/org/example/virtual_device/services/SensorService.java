@@ -1,62 +1,73 @@
 package org.example.virtual_device.services;
 
-import lombok.Getter;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.example.virtual_device.bean.Sensor;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
 import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class SensorService {
 
-    @Getter
-    Map<String, Sensor> allSensors = new HashMap<>();
+    private final FleetEngine fleetEngine;
+    private final SensorRegistry sensorRegistry;
+    private final EventLog eventLog;
+
+    @PostConstruct
+    public void init() {
+        fleetEngine.getCommunicationService().setRpcHandler(this::handleRpc);
+    }
+
+    public Map<String, Sensor> getAllSensors() {
+        return sensorRegistry.getSensors();
+    }
 
     public boolean registerSensor(String accessToken) {
-        if (!allSensors.containsKey(accessToken)) {
-            allSensors.put(accessToken, new Sensor(accessToken));
-            System.out.println("Sensor: " + accessToken + " registered");
-            return true;
-        }
-        return false;
+        // bulk registrations often repeat tokens, a sensor built for a taken one would open its channel and route for nothing
+        if (sensorRegistry.get(accessToken) != null)
+            return false;
+        Sensor sensor = new Sensor(accessToken, fleetEngine);
+        if (!sensorRegistry.register(sensor))
+            return false;
+        fleetEngine.getCommunicationService().registerDevice(accessToken);
+        sensor.startSensor();
+        eventLog.info(EventLog.Kind.SENSOR, "Sensor: " + accessToken + " registered");
+        return true;
     }
 
     public boolean armSensor(String accessToken) {
-        if (allSensors.containsKey(accessToken) && allSensors.get(accessToken).getActiveThread() != null) {
-            allSensors.get(accessToken).armSensor();
-            return true;
-        }
-        return false;
+        Sensor sensor = sensorRegistry.get(accessToken);
+        return sensor != null && sensor.armSensor();
     }
 
     public boolean disarmSensor(String accessToken) {
-        if (allSensors.containsKey(accessToken) && allSensors.get(accessToken).getActiveThread() != null) {
-            allSensors.get(accessToken).disarmSensor();
-            return true;
-        }
-        return false;
+        Sensor sensor = sensorRegistry.get(accessToken);
+        return sensor != null && sensor.disarmSensor();
     }
 
     public boolean stopSensor(String accessToken) {
-        if (allSensors.containsKey(accessToken)) {
-            if (allSensors.get(accessToken).getActiveThread() != null) {
-                allSensors.get(accessToken).stopSensor();
-            }
-            return true;
-        }
-        return false;
+        Sensor sensor = sensorRegistry.get(accessToken);
+        if (sensor == null)
+            return false;
+        sensor.stopSensor();
+        return true;
     }
 
     public boolean startSensor(String accessToken) {
-        if (allSensors.containsKey(accessToken)) {
-            if (allSensors.get(accessToken).getActiveThread() == null) {
-                allSensors.get(accessToken).startSensor();
-            }
-            return true;
-        }
-        return false;
+        Sensor sensor = sensorRegistry.get(accessToken);
+        if (sensor == null)
+            return false;
+        sensor.startSensor();
+        return true;
+    }
+
+    private boolean handleRpc(String accessToken, String method) {
+        return switch (method) {
+            case "armDevice" -> armSensor(accessToken);
+            case "disarmDevice" -> disarmSensor(accessToken);
+            default -> false;
+        };
     }
 }
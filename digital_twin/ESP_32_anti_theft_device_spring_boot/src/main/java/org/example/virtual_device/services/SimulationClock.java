@@ -0,0 +1,32 @@
+package org.example.virtual_device.services;
+
+import java.util.concurrent.ScheduledFuture;
+
+// the time sensors live in, FleetEngine schedules every tick and wake-up through it
+public interface SimulationClock {
+
+    // simulated wall-clock time, what telemetry timestamps carry
+    long currentTimeMillis();
+
+    // simulated monotonic time for measuring intervals
+    long nanoTime();
+
+    // delays and periods are simulated milliseconds
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis);
+
+    ScheduledFuture<?> schedule(Runnable task, long delayMillis);
+
+    int getQueuedTasks();
+
+    // false when simulated time runs faster than the wall clock, so the platform cannot timestamp readings itself
+    boolean isRealTime();
+
+    void shutdown();
+
+    // timeCompression 1 is real time, 60 a simulated minute per second, 0 or less as fast as possible
+    static SimulationClock create(double timeCompression, int threads, VirtualClock.Backpressure backpressure, EventLog eventLog) {
+        if (timeCompression <= 0)
+            return new VirtualClock(backpressure, eventLog);
+        return new ScaledClock(threads, timeCompression);
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.util.concurrent.*;
+
+// encodes readings of many sensors straight into one {token: [{ts, values}], ...} batch, batch buffers come from
+// a fixed pool and go back to it once the transport has sent them, so batching allocates nothing per reading
+public class TelemetryBatcher {
+
+    private final TelemetryTransport transport;
+    private final int maxBatchSize;
+    private final EventLog eventLog;
+    private final BlockingQueue<Batch> freeBatches;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "telemetry-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Batch current;
+    private long epoch;
+
+    public TelemetryBatcher(TelemetryTransport transport, int maxBatchSize, long lingerMillis, int maxInFlightBatches, EventLog eventLog) {
+        this.transport = transport;
+        this.maxBatchSize = maxBatchSize;
+        this.eventLog = eventLog;
+        freeBatches = new ArrayBlockingQueue<>(maxInFlightBatches);
+        for (int i = 0; i < maxInFlightBatches; i++) {
+            freeBatches.add(new Batch(maxBatchSize));
+        }
+        executor.scheduleAtFixedRate(this::flush, lingerMillis, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // returns false if the reading was dropped because every batch buffer is still in flight
+    public boolean add(DeviceChannel device, int fields, long ts, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        return add(device, fields, ts, latitude, longitude, motionDetected, armed, imu, null, 0);
+    }
+
+    // a reading whose values are already encoded, e.g. a recorded one
+    public boolean add(DeviceChannel device, long ts, byte[] values, int length) {
+        return add(device, 0, ts, 0, 0, false, false, null, values, length);
+    }
+
+    private boolean add(DeviceChannel device, int fields, long ts, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu,
+                        byte[] values, int length) {
+        Batch previous = null;
+        Batch full = null;
+        boolean added = false;
+        synchronized (this) {
+            // a sensor appears once per batch, a second reading starts the next batch
+            if (current != null && device.getBatchEpoch() == epoch)
+                previous = take();
+            if (current == null && (current = freeBatches.poll()) != null) {
+                current.buffer.reset().put((byte) '{');
+                current.readings = 0;
+                epoch++;
+            }
+            if (current != null) {
+                if (current.readings > 0)
+                    current.buffer.put((byte) ',');
+                current.buffer.put(device.getBatchKey());
+                if (values != null)
+                    TelemetryEncoder.encodeReading(current.buffer, ts, values, length);
+                else
+                    TelemetryEncoder.encodeReading(current.buffer, fields, ts, latitude, longitude, motionDetected, armed, imu);
+                current.buffer.put((byte) ']');
+                device.setBatchEpoch(epoch);
+                current.devices[current.readings] = device;
+                added = true;
+                if (++current.readings >= maxBatchSize)
+                    full = take();
+            }
+        }
+        if (previous != null)
+            send(previous);
+        if (full != null)
+            send(full);
+        return added;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        flush();
+    }
+
+    private void flush() {
+        Batch batch;
+        synchronized (this) {
+            if (current == null)
+                return;
+            batch = take();
+        }
+        send(batch);
+    }
+
+    private Batch take() {
+        Batch batch = current;
+        batch.buffer.put((byte) '}');
+        current = null;
+        return batch;
+    }
+
+    private void send(Batch batch) {
+        int readings = batch.readings;
+        try {
+            transport.sendBatch(batch.buffer, readings, batch);
+        } catch (Exception e) {
+            batch.run();
+            eventLog.error(EventLog.Kind.FAILED, "Failed to send batch of " + readings + " readings: " + e.getMessage());
+        }
+    }
+
+    // a pooled batch buffer and the sensor of each of its readings, in order. It is the done callback given to the
+    // transport, so a failure handler can tell whose readings a failed batch held, and running it returns it to the pool
+    class Batch implements Runnable {
+        private final TelemetryBuffer buffer;
+        private final DeviceChannel[] devices;
+        private int readings;
+
+        private Batch(int maxBatchSize) {
+            buffer = new TelemetryBuffer(maxBatchSize * 320);
+            devices = new DeviceChannel[maxBatchSize];
+        }
+
+        DeviceChannel getDevice(int reading) {
+            return devices[reading];
+        }
+
+        @Override
+        public void run() {
+            freeBatches.add(this);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// writes the fixed telemetry schema straight into a buffer, every key and constant is encoded once here
+public final class TelemetryEncoder {
+
+    // fields of a reading, report by exception sends only the ones that changed
+    public static final int MOTION_FIELD = 1;
+    public static final int IMU_FIELD = 2; // gyro and the accel window, they change every reading so only full readings carry them
+    public static final int ARMED_FIELD = 4;
+    public static final int LOCATION_FIELD = 8; // only sent while moving and armed, like in the full reading
+    public static final int ALL_FIELDS = MOTION_FIELD | IMU_FIELD | ARMED_FIELD | LOCATION_FIELD;
+
+    private static final byte[] MOTION_DETECTED = ascii("{\"motion_detected\":");
+    private static final byte[] GYRO = ascii(",\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8");
+    private static final byte[] GYRO_X = ascii(",\"gyro_x\":");
+    private static final byte[] GYRO_Y = ascii(",\"gyro_y\":");
+    private static final byte[] GYRO_Z = ascii(",\"gyro_z\":");
+    private static final byte[] ACCEL_MIN = ascii(",\"accel_min\":");
+    private static final byte[] ACCEL_MAX = ascii(",\"accel_max\":");
+    private static final byte[] ACCEL_RMS = ascii(",\"accel_rms\":");
+    private static final byte[] ARMED = ascii(",\"armed\":");
+    private static final byte[] LATITUDE = ascii(",\"latitude\":");
+    private static final byte[] LONGITUDE = ascii(",\"longitude\":");
+    private static final byte[] TS = ascii("{\"ts\":");
+    private static final byte[] VALUES = ascii(",\"values\":");
+    private static final int COORDINATE_DECIMALS = 7; // about 1 cm
+    private static final int GYRO_DECIMALS = 2; // like the firmware
+    private static final int ACCEL_DECIMALS = 3;
+
+    private TelemetryEncoder() {
+    }
+
+    // {"motion_detected":..,"gyro_x":..,"gyro_y":..,"gyro_z":..,"armed":..[,"latitude":..,"longitude":..]}
+    public static TelemetryBuffer encodeValues(TelemetryBuffer out, double latitude, double longitude, boolean motionDetected, boolean armed) {
+        return encodeValues(out, latitude, longitude, motionDetected, armed, null);
+    }
+
+    // imu is the sensor's synthetic IMU, without one the gyro is a constant
+    public static TelemetryBuffer encodeValues(TelemetryBuffer out, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        out.put(MOTION_DETECTED).putBoolean(motionDetected);
+        putImu(out, imu, false).put(ARMED).putBoolean(armed);
+        if (motionDetected && armed) {
+            out.put(LATITUDE).putDouble(latitude, COORDINATE_DECIMALS);
+            out.put(LONGITUDE).putDouble(longitude, COORDINATE_DECIMALS);
+        }
+        return out.put((byte) '}');
+    }
+
+    // only the given fields, in the same order
+    public static TelemetryBuffer encodeValues(TelemetryBuffer out, int fields, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        if (fields == ALL_FIELDS)
+            return encodeValues(out, latitude, longitude, motionDetected, armed, imu);
+        out.put((byte) '{');
+        boolean first = true;
+        if ((fields & MOTION_FIELD) != 0) {
+            out.put(MOTION_DETECTED, 1, MOTION_DETECTED.length - 1).putBoolean(motionDetected);
+            first = false;
+        }
+        if ((fields & IMU_FIELD) != 0) {
+            putImu(out, imu, first);
+            first = false;
+        }
+        if ((fields & ARMED_FIELD) != 0) {
+            putKey(out, ARMED, first).putBoolean(armed);
+            first = false;
+        }
+        if ((fields & LOCATION_FIELD) != 0 && motionDetected && armed) {
+            putKey(out, LATITUDE, first).putDouble(latitude, COORDINATE_DECIMALS);
+            out.put(LONGITUDE).putDouble(longitude, COORDINATE_DECIMALS);
+        }
+        return out.put((byte) '}');
+    }
+
+    // {"ts":..,"values":{..}}
+    public static TelemetryBuffer encodeReading(TelemetryBuffer out, long ts, double latitude, double longitude, boolean motionDetected, boolean armed) {
+        return encodeReading(out, ALL_FIELDS, ts, latitude, longitude, motionDetected, armed, null);
+    }
+
+    public static TelemetryBuffer encodeReading(TelemetryBuffer out, int fields, long ts, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        out.put(TS).putLong(ts).put(VALUES);
+        encodeValues(out, fields, latitude, longitude, motionDetected, armed, imu);
+        return out.put((byte) '}');
+    }
+
+    // {"ts":..,"values":<values>} around already encoded values
+    public static TelemetryBuffer encodeReading(TelemetryBuffer out, long ts, byte[] values, int length) {
+        return out.put(TS).putLong(ts).put(VALUES).put(values, 0, length).put((byte) '}');
+    }
+
+    public static boolean isReading(byte[] bytes, int length) {
+        return Arrays.equals(bytes, 0, Math.min(TS.length, length), TS, 0, TS.length);
+    }
+
+    // whether the buffer already holds {"ts":..,"values":{..}} rather than just the values
+    public static boolean isReading(TelemetryBuffer buffer) {
+        return isReading(buffer.getBytes(), buffer.getLength());
+    }
+
+    // the newest gyro sample and the accel magnitude's min, max and RMS since the previous tick, in g
+    private static TelemetryBuffer putImu(TelemetryBuffer out, SyntheticImu imu, boolean first) {
+        if (imu == null || imu.getSamples() == 0)
+            return putKey(out, GYRO, first);
+        putKey(out, GYRO_X, first).putDouble(imu.getGyroX(0), GYRO_DECIMALS);
+        out.put(GYRO_Y).putDouble(imu.getGyroY(0), GYRO_DECIMALS);
+        out.put(GYRO_Z).putDouble(imu.getGyroZ(0), GYRO_DECIMALS);
+        out.put(ACCEL_MIN).putDouble(imu.getWindowMin(), ACCEL_DECIMALS);
+        out.put(ACCEL_MAX).putDouble(imu.getWindowMax(), ACCEL_DECIMALS);
+        return out.put(ACCEL_RMS).putDouble(imu.getWindowRms(), ACCEL_DECIMALS);
+    }
+
+    // the keys start with a comma, which the first field leaves out
+    private static TelemetryBuffer putKey(TelemetryBuffer out, byte[] key, boolean first) {
+        return first ? out.put(key, 1, key.length - 1) : out.put(key);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// appends every emitted reading as (device, ts, payload) to a compact binary file, see TelemetryRecording for the format.
+// Every ticking thread encodes into a chunk of its own and only takes the file's lock to append a full chunk,
+// TelemetryRecording merges the chunks of all threads back into time order
+public class TelemetryRecorder implements Closeable {
+
+    private static final int CHUNK_BYTES = 8 * 1024;
+
+    private final Path file;
+    private final OutputStream out;
+    private final Map<String, Integer> tokenIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTokenId = new AtomicInteger();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final ThreadLocal<Chunk> chunk = ThreadLocal.withInitial(this::newChunk);
+    private volatile boolean closed;
+
+    public TelemetryRecorder(Path file) {
+        this.file = file;
+        try {
+            out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+            out.write(TelemetryRecording.MAGIC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot record to " + file, e);
+        }
+    }
+
+    public void record(String accessToken, int fields, long timestamp, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        Chunk chunk = this.chunk.get();
+        // only the closing thread competes for it
+        synchronized (chunk) {
+            // a sensor may still be in its tick when recording stops
+            if (closed)
+                return;
+            Integer tokenId = tokenIds.get(accessToken);
+            if (tokenId == null)
+                tokenId = tokenIds.computeIfAbsent(accessToken, token -> nextTokenId.getAndIncrement());
+            TelemetryBuffer buffer = chunk.buffer;
+            if (buffer.getLength() == 0) {
+                chunk.firstTimestamp = timestamp;
+                chunk.lastTimestamp = timestamp;
+            }
+            // a chunk may be written before the one of another thread that already named the token
+            if (!chunk.tokens.get(tokenId)) {
+                byte[] token = accessToken.getBytes(StandardCharsets.UTF_8);
+                buffer.put((byte) TelemetryRecording.TOKEN);
+                putVarLong(buffer, tokenId);
+                putVarLong(buffer, token.length);
+                buffer.put(token);
+                chunk.tokens.set(tokenId);
+            }
+            TelemetryEncoder.encodeValues(chunk.values.reset(), fields, latitude, longitude, motionDetected, armed, imu);
+            buffer.put((byte) TelemetryRecording.READING);
+            putVarLong(buffer, tokenId);
+            // a thread ticks in time order, but a wall clock can step back, zigzag keeps small negative steps small
+            long delta = timestamp - chunk.lastTimestamp;
+            putVarLong(buffer, (delta << 1) ^ (delta >> 63));
+            chunk.lastTimestamp = timestamp;
+            putVarLong(buffer, chunk.values.getLength());
+            buffer.put(chunk.values);
+            chunk.readings++;
+            if (buffer.getLength() >= CHUNK_BYTES)
+                write(chunk);
+        }
+    }
+
+    public long getReadings() {
+        long readings = 0;
+        synchronized (chunks) {
+            for (Chunk chunk : chunks) {
+                synchronized (chunk) {
+                    readings += chunk.readings;
+                }
+            }
+        }
+        return readings;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (chunks) {
+            for (Chunk chunk : chunks) {
+                synchronized (chunk) {
+                    write(chunk);
+                }
+            }
+        }
+        synchronized (out) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot record to " + file, e);
+            }
+        }
+    }
+
+    private Chunk newChunk() {
+        Chunk chunk = new Chunk();
+        synchronized (chunks) {
+            chunks.add(chunk);
+        }
+        return chunk;
+    }
+
+    private void write(Chunk chunk) {
+        if (chunk.buffer.getLength() == 0)
+            return;
+        TelemetryBuffer header = chunk.header.reset();
+        header.put((byte) TelemetryRecording.CHUNK);
+        putVarLong(header, chunk.firstTimestamp);
+        putVarLong(header, chunk.buffer.getLength());
+        synchronized (out) {
+            try {
+                out.write(header.getBytes(), 0, header.getLength());
+                out.write(chunk.buffer.getBytes(), 0, chunk.buffer.getLength());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot record to " + file, e);
+            }
+        }
+        chunk.buffer.reset();
+    }
+
+    private static void putVarLong(TelemetryBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    // the records a thread has not written to the file yet
+    private static class Chunk {
+        final TelemetryBuffer buffer = new TelemetryBuffer(CHUNK_BYTES + 512);
+        final TelemetryBuffer values = new TelemetryBuffer(256);
+        final TelemetryBuffer header = new TelemetryBuffer(32);
+        final BitSet tokens = new BitSet(); // named in this thread's chunks
+        long firstTimestamp;
+        long lastTimestamp;
+        long readings;
+    }
+}
@@ -0,0 +1,231 @@
+package org.example.virtual_device.services;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// reads a TelemetryRecorder file one reading at a time in timestamp order, the payload array is reused between readings
+// format: "TWINREC3", then chunks of
+//   'C' ts, length                                the chunk of one recording thread, its first reading is at ts
+// each followed by length bytes of records
+//   'T' token id, token length, UTF-8 token       before a chunk's first reading of the token, unless an earlier chunk
+//                                                 of the same thread named it
+//   'R' token id, zigzag ts delta, payload length, payload
+// with every number a base-128 varint. A thread records its readings in the order it ticked them, but its chunks are spread over the file
+// among the other threads', so the chunks are merged by time: only the chunks of the time being read are in memory.
+// "TWINREC1" recordings are the records of one chunk starting at 0, without the 'C'
+public class TelemetryRecording implements Closeable {
+
+    static final byte[] MAGIC = "TWINREC3".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FIRST_MAGIC = "TWINREC1".getBytes(StandardCharsets.US_ASCII);
+    static final int CHUNK = 'C';
+    static final int TOKEN = 'T';
+    static final int READING = 'R';
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<String> tokens = new ArrayList<>();
+    // by the time of their next reading, chunks not read yet by the time of their first
+    private final PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+    private Cursor current;
+
+    public TelemetryRecording(Path file) {
+        this.file = file;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                readFully(ByteBuffer.wrap(magic), 0);
+                if (Arrays.equals(magic, FIRST_MAGIC)) {
+                    Cursor cursor = new Cursor(0, MAGIC.length, 0);
+                    cursor.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(MAGIC.length)), 1 << 16));
+                    cursors.add(cursor);
+                } else if (Arrays.equals(magic, MAGIC)) {
+                    indexChunks();
+                } else {
+                    throw new IllegalArgumentException(file + " is not a telemetry recording");
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException(file + " is not a telemetry recording", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read recording " + file, e);
+        }
+    }
+
+    // false at the end of the recording
+    public boolean next() {
+        try {
+            if (current != null && current.advance())
+                cursors.add(current);
+            while ((current = cursors.poll()) != null && !current.started) {
+                current.start();
+                if (current.advance())
+                    cursors.add(current);
+            }
+            return current != null;
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Recording " + file + " ends in the middle of a record", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read recording " + file, e);
+        }
+    }
+
+    public String getAccessToken() {
+        return current.accessToken;
+    }
+
+    public long getTimestamp() {
+        return current.timestamp;
+    }
+
+    public byte[] getPayload() {
+        return current.payload;
+    }
+
+    public int getPayloadLength() {
+        return current.payloadLength;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read recording " + file, e);
+        }
+    }
+
+    // reads only the chunk headers, skipping the records
+    private void indexChunks() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(1 + 2 * 10);
+        long size = channel.size();
+        long position = MAGIC.length;
+        while (position < size) {
+            header.clear();
+            if (size - position < header.capacity())
+                header.limit((int) (size - position));
+            readFully(header, position);
+            header.flip();
+            if (header.get() != CHUNK)
+                throw new IllegalArgumentException("Corrupt recording " + file + ": no chunk at " + position);
+            long timestamp = getVarLong(header);
+            long length = getVarLong(header);
+            long start = position + header.position();
+            if (length < 0 || length > Integer.MAX_VALUE || start + length > size)
+                throw new IllegalArgumentException("Recording " + file + " ends in the middle of a chunk");
+            Cursor cursor = new Cursor(timestamp, start, (int) length);
+            cursors.add(cursor);
+            position = start + length;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException();
+            position += read;
+        }
+    }
+
+    private long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && buffer.hasRemaining(); shift += 7) {
+            int b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Corrupt recording " + file + ": bad chunk header");
+    }
+
+    // the next reading of one chunk, ties go to the chunk earlier in the file, which a thread's earlier chunk always is
+    private class Cursor implements Comparable<Cursor> {
+        final long start;
+        final int length;
+        DataInputStream in; // a chunk's records are read once its first reading is due
+        boolean started;
+        String accessToken;
+        long timestamp;
+        byte[] payload = new byte[256];
+        int payloadLength;
+
+        Cursor(long timestamp, long start, int length) {
+            this.timestamp = timestamp;
+            this.start = start;
+            this.length = length;
+        }
+
+        void start() throws IOException {
+            started = true;
+            if (in != null)
+                return;
+            byte[] records = new byte[length];
+            readFully(ByteBuffer.wrap(records), start);
+            in = new DataInputStream(new ByteArrayInputStream(records));
+        }
+
+        // false at the end of the chunk
+        boolean advance() throws IOException {
+            while (true) {
+                int type = in.read();
+                if (type < 0)
+                    return false;
+                if (type == TOKEN) {
+                    int id = (int) readVarLong();
+                    byte[] token = new byte[(int) readVarLong()];
+                    in.readFully(token);
+                    if (id < 0 || id > tokens.size() + (1 << 20))
+                        throw new IllegalArgumentException("Corrupt recording " + file + ": token id " + id);
+                    // chunks of several threads name tokens in any order
+                    while (tokens.size() <= id)
+                        tokens.add(null);
+                    tokens.set(id, new String(token, StandardCharsets.UTF_8));
+                } else if (type == READING) {
+                    int id = (int) readVarLong();
+                    accessToken = id >= 0 && id < tokens.size() ? tokens.get(id) : null;
+                    if (accessToken == null)
+                        throw new IllegalArgumentException("Corrupt recording " + file + ": token " + id + " used before it was named");
+                    long zigzag = readVarLong();
+                    timestamp += (zigzag >>> 1) ^ -(zigzag & 1);
+                    payloadLength = (int) readVarLong();
+                    if (payloadLength > payload.length)
+                        payload = new byte[payloadLength];
+                    in.readFully(payload, 0, payloadLength);
+                    return true;
+                } else {
+                    throw new IllegalArgumentException("Corrupt recording " + file + ": unknown record " + type);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byTime = Long.compare(timestamp, other.timestamp);
+            return byTime != 0 ? byTime : Long.compare(start, other.start);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Corrupt recording " + file + ": varint too long");
+        }
+    }
+}
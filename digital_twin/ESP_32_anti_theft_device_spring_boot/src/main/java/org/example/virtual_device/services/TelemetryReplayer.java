@@ -0,0 +1,46 @@
+package org.example.virtual_device.services;
+
+import lombok.RequiredArgsConstructor;
+import org.example.virtual_device.model.DeviceChannel;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// sends a recording again with its original spacing, speed times faster, or as fast as possible (speed 0), every reading
+// with the time it was recorded at, so the platform gets the run as it was
+@Service
+@RequiredArgsConstructor
+public class TelemetryReplayer {
+
+    private final CommunicationService communicationService;
+
+    // returns the number of readings sent, readings are never dropped, a saturated device holds the replay back instead
+    public long replay(Path file, double speed) {
+        Map<String, DeviceChannel> channels = new HashMap<>();
+        long sent = 0;
+        try (TelemetryRecording recording = new TelemetryRecording(file)) {
+            long started = System.nanoTime();
+            long firstTimestamp = 0;
+            while (recording.next()) {
+                if (sent == 0)
+                    firstTimestamp = recording.getTimestamp();
+                if (speed > 0) {
+                    long wait = started + (long) ((recording.getTimestamp() - firstTimestamp) * 1_000_000 / speed) - System.nanoTime();
+                    if (wait > 0)
+                        LockSupport.parkNanos(wait);
+                }
+                DeviceChannel device = channels.computeIfAbsent(recording.getAccessToken(), accessToken -> {
+                    communicationService.registerDevice(accessToken);
+                    return communicationService.openChannel(accessToken);
+                });
+                while (!communicationService.sendRecorded(device, recording.getTimestamp(), recording.getPayload(), recording.getPayloadLength()))
+                    LockSupport.parkNanos(100_000);
+                sent++;
+            }
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,275 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.example.virtual_device.UserVariables;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// a stand-in for the platform inside the twin, enabled with --twin.sink=true: takes telemetry on the platform's paths,
+// keeps the latest readings of every device in memory and measures how long they took from the transport to here,
+// so load runs need no shared server
+@Service
+@ConditionalOnProperty(name = "twin.sink", havingValue = "true", matchIfMissing = UserVariables.embeddedSink)
+public class TelemetrySink {
+
+    public static final String SENT_HEADER = "X-Twin-Sent"; // System.nanoTime() of the send, only comparable within this JVM
+    public static final long NOT_SENT = Long.MIN_VALUE; // a message without SENT_HEADER
+    private static final int MOTION_DETECTED = 1;
+    private static final int ARMED = 2;
+    private static final int RATE_SECONDS = 64; // power of two, seconds the recent rate can look back
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<String, Series> devices = new ConcurrentHashMap<>();
+    private final CommunicationService communicationService;
+    private final Timer ingestLatency;
+    private final Counter readings;
+    private final AtomicLong firstNanos = new AtomicLong(NOT_SENT);
+    private volatile long lastNanos;
+    private volatile long outageEndNanos = System.nanoTime();
+    private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_SECONDS); // the second each slot counts
+    private final AtomicLongArray rateCounts = new AtomicLongArray(RATE_SECONDS);
+
+    public TelemetrySink(CommunicationService communicationService, MeterRegistry registry) {
+        this.communicationService = communicationService;
+        ingestLatency = Timer.builder("sink.ingest.latency")
+                .description("Time from handing a message to the transport until the embedded sink parsed it")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+        readings = Counter.builder("sink.readings").description("Readings taken by the embedded sink").register(registry);
+        Gauge.builder("sink.devices", devices, Map::size).description("Devices the embedded sink has readings of").register(registry);
+    }
+
+    public record Reading(long ts, long receivedAt, Double latitude, Double longitude, boolean motionDetected, boolean armed) {
+    }
+
+    public record Stats(int devices, long readings, double readingsPerSecond, double recentReadingsPerSecond, Map<String, Double> latencyMillis) {
+    }
+
+    // body is the values, one {"ts":..,"values":{..}} reading or an array of them, like the platform's device API
+    public int ingest(String accessToken, byte[] body, long sentNanos) {
+        return ingest(body, sentNanos, false, accessToken);
+    }
+
+    // body is {token: [{ts, values}], ...} like the platform's gateway API
+    public int ingestBatch(byte[] body, long sentNanos) {
+        return ingest(body, sentNanos, true, null);
+    }
+
+    // answers telemetry with 503 for this long, to watch the twin spool and catch up
+    public void startOutage(long millis) {
+        outageEndNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public boolean isAvailable() {
+        return System.nanoTime() - outageEndNanos >= 0;
+    }
+
+    // delivers an RPC to the sensor through the same handler the transports use, returns whether it was handled
+    public boolean sendRpc(String accessToken, String method) {
+        return communicationService.handleRpc(accessToken, method);
+    }
+
+    // the newest readings of a device, oldest first
+    public List<Reading> getReadings(String accessToken, int limit) {
+        Series series = devices.get(accessToken);
+        return series == null ? List.of() : series.latest(limit);
+    }
+
+    public Stats getStats() {
+        long first = firstNanos.get();
+        long count = (long) readings.count();
+        double seconds = first == NOT_SENT ? 0 : (lastNanos - first) / 1e9;
+        HistogramSnapshot snapshot = ingestLatency.takeSnapshot();
+        Map<String, Double> latency = new LinkedHashMap<>();
+        latency.put("mean", snapshot.mean(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues())
+            latency.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+        latency.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+        return new Stats(devices.size(), count, seconds > 0 ? count / seconds : 0, recentRate(10), latency);
+    }
+
+    public void printSummary(EventLog eventLog) {
+        Stats stats = getStats();
+        eventLog.publish("Sink received " + stats.readings() + " readings of " + stats.devices() + " devices ("
+                + String.format("%.1f", stats.readingsPerSecond()) + "/s sustained)", false);
+        if (ingestLatency.count() > 0)
+            FleetMetrics.printLatency(eventLog, "Ingest latency", ingestLatency);
+    }
+
+    private int ingest(byte[] body, long sentNanos, boolean batch, String accessToken) {
+        long receivedNanos = System.nanoTime();
+        long receivedAt = System.currentTimeMillis();
+        int count = 0;
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            JsonToken root = parser.nextToken();
+            if (batch) {
+                expect(root == JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    Series series = series(parser.currentName());
+                    parser.nextToken();
+                    count += parseDevice(parser, series, receivedAt);
+                }
+                expect(parser.currentToken() == JsonToken.END_OBJECT);
+            } else {
+                count = parseDevice(parser, series(accessToken), receivedAt);
+            }
+            expect(parser.nextToken() == null);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid telemetry: " + e.getMessage());
+        }
+        if (sentNanos != NOT_SENT)
+            ingestLatency.record(Math.max(0, receivedNanos - sentNanos), TimeUnit.NANOSECONDS);
+        readings.increment(count);
+        firstNanos.compareAndSet(NOT_SENT, receivedNanos);
+        lastNanos = receivedNanos;
+        countRate(receivedNanos, count);
+        return count;
+    }
+
+    private Series series(String accessToken) {
+        return devices.computeIfAbsent(accessToken, token -> new Series(UserVariables.sinkReadingsPerDevice));
+    }
+
+    // the parser is on the device's reading or on the array of its readings
+    private int parseDevice(JsonParser parser, Series series, long receivedAt) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parseReading(parser, series, receivedAt);
+            return 1;
+        }
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            parseReading(parser, series, receivedAt);
+            count++;
+        }
+        return count;
+    }
+
+    private void parseReading(JsonParser parser, Series series, long receivedAt) throws IOException {
+        ParsedReading reading = new ParsedReading();
+        reading.ts = receivedAt; // the platform stamps readings without ts on arrival
+        // like the platform's latest values, a key left out of a reported by exception reading keeps its last value
+        int last = series.lastFlags();
+        reading.motionDetected = (last & MOTION_DETECTED) != 0;
+        reading.armed = (last & ARMED) != 0;
+        parseFields(parser, reading);
+        series.add(reading.ts, receivedAt, reading.latitude, reading.longitude,
+                (reading.motionDetected ? MOTION_DETECTED : 0) | (reading.armed ? ARMED : 0));
+    }
+
+    // reads the known keys of a reading or of its values and skips everything else
+    private void parseFields(JsonParser parser, ParsedReading reading) throws IOException {
+        expect(parser.currentToken() == JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "ts" -> reading.ts = parser.getLongValue();
+                case "values" -> parseFields(parser, reading);
+                case "latitude" -> reading.latitude = parser.getDoubleValue();
+                case "longitude" -> reading.longitude = parser.getDoubleValue();
+                case "motion_detected" -> reading.motionDetected = value == JsonToken.VALUE_TRUE;
+                case "armed" -> reading.armed = value == JsonToken.VALUE_TRUE;
+                default -> parser.skipChildren();
+            }
+        }
+        expect(parser.currentToken() == JsonToken.END_OBJECT);
+    }
+
+    private void countRate(long nanos, int count) {
+        long second = nanos / 1_000_000_000L;
+        int slot = (int) (second & (RATE_SECONDS - 1));
+        long counted = rateSeconds.get(slot);
+        // the first message of a new second takes the slot over, a message of the old second racing it may go uncounted
+        if (counted != second && rateSeconds.compareAndSet(slot, counted, second))
+            rateCounts.set(slot, 0);
+        rateCounts.addAndGet(slot, count);
+    }
+
+    // readings per second over the last complete seconds
+    private double recentRate(int seconds) {
+        long current = System.nanoTime() / 1_000_000_000L;
+        long sum = 0;
+        for (long second = current - seconds; second < current; second++) {
+            int slot = (int) (second & (RATE_SECONDS - 1));
+            if (rateSeconds.get(slot) == second)
+                sum += rateCounts.get(slot);
+        }
+        return sum / (double) seconds;
+    }
+
+    private static void expect(boolean valid) {
+        if (!valid)
+            throw new IllegalArgumentException("Invalid telemetry: not a platform telemetry message");
+    }
+
+    private static class ParsedReading {
+        long ts;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        boolean motionDetected;
+        boolean armed;
+    }
+
+    // the newest readings of one device in primitive ring buffers, so a large fleet costs no object per reading
+    private static class Series {
+        private final long[] ts;
+        private final long[] receivedAt;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final byte[] flags;
+        private long count;
+
+        Series(int capacity) {
+            ts = new long[capacity];
+            receivedAt = new long[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+            flags = new byte[capacity];
+        }
+
+        synchronized void add(long ts, long receivedAt, double latitude, double longitude, int flags) {
+            int slot = (int) (count++ % this.ts.length);
+            this.ts[slot] = ts;
+            this.receivedAt[slot] = receivedAt;
+            latitudes[slot] = latitude;
+            longitudes[slot] = longitude;
+            this.flags[slot] = (byte) flags;
+        }
+
+        synchronized int lastFlags() {
+            return count == 0 ? 0 : flags[(int) ((count - 1) % ts.length)];
+        }
+
+        synchronized List<Reading> latest(int limit) {
+            int size = (int) Math.min(Math.min(count, ts.length), Math.max(0, limit));
+            List<Reading> latest = new ArrayList<>(size);
+            for (long i = count - size; i < count; i++) {
+                int slot = (int) (i % ts.length);
+                latest.add(new Reading(ts[slot], receivedAt[slot],
+                        Double.isNaN(latitudes[slot]) ? null : latitudes[slot],
+                        Double.isNaN(longitudes[slot]) ? null : longitudes[slot],
+                        (flags[slot] & MOTION_DETECTED) != 0, (flags[slot] & ARMED) != 0));
+            }
+            return latest;
+        }
+    }
+}
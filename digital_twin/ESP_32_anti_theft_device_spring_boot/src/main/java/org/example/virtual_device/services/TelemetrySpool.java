@@ -0,0 +1,485 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// telemetry the platform did not take, appended to memory-mapped segment files and sent again in order through the
+// batch API once the platform answers: readings with the batch key of their device, failed batches as they were.
+// A batch leaves the spool only when it was delivered, drained segments are recycled, since a mapped file cannot be
+// deleted on Windows, and what is left in the segments is sent after a restart. Every device counts its readings in
+// the spool, so only sensors that have some wait behind them and the others keep sending
+public class TelemetrySpool implements TelemetryTransport.FailureHandler {
+
+    private static final int MAGIC = 0x54575350; // "TWSP"
+    private static final int READ_POSITION = 4; // int, next record to drain
+    private static final int SEQUENCE = 8; // long, order of the segments
+    private static final int HEADER = 16;
+    // a record is its length, kind, readings, batch key length, batch key and payload, a length of 0 ends a segment
+    private static final int RECORD_HEADER = 4 + 1 + 4 + 2;
+    private static final byte READING = 1;
+    private static final byte BATCH = 2;
+    private static final byte[] NO_KEY = new byte[0];
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final double drainPerSecond;
+    private final int drainBatchSize;
+    private final long retryNanos;
+    private final TelemetryTransport transport;
+    private final FleetMetrics metrics;
+    private final EventLog eventLog;
+    private final Counter appended;
+    private final Counter drained;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>(); // oldest first, the last one is appended to
+    private final ArrayDeque<Segment> free = new ArrayDeque<>();
+    private long sequence;
+    private volatile long pendingReadings;
+    private volatile boolean full;
+    private final ThreadLocal<TelemetryBuffer> scratch = ThreadLocal.withInitial(() -> new TelemetryBuffer(320));
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "telemetry-spool");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // the batch in flight, at most one so nothing overtakes it
+    private final TelemetryBuffer drainBuffer = new TelemetryBuffer(64 * 1024);
+    private final Runnable drainDone = this::drainDone;
+    private boolean draining;
+    private boolean drainFailed;
+    private Segment drainSegment;
+    private int drainPosition;
+    private int drainReadings;
+    private double budget;
+    private long refilledNanos = System.nanoTime();
+    private long retryAtNanos;
+    // the device of every spooled reading in order, null where it is not known, as a growing ring
+    private DeviceChannel[] owners = new DeviceChannel[1024];
+    private int ownersHead;
+    private int ownersSize;
+    private long recoveredReadings; // readings from the last run, the oldest ones, belong to no device of this one
+    // the records of the batch being collected, indexed instead of copied and chained per device, reused for every batch
+    private final MappedByteBuffer[] recordBuffers;
+    private final int[] recordPositions;
+    private final int[] recordNext; // the next record of the same device, -1 after the last
+    private final int[] deviceFirst;
+    private final int[] deviceLast;
+    private final int[] deviceTable; // open addressing on the batch key, device + 1, 0 while free
+    private int devices;
+
+    public TelemetrySpool(Path directory, int segmentBytes, long maxBytes, double drainPerSecond, int drainBatchSize,
+                          long retryMillis, long drainIntervalMillis, TelemetryTransport transport, FleetMetrics metrics, EventLog eventLog) {
+        if (maxBytes / segmentBytes < 2)
+            throw new IllegalArgumentException("The spool needs room for at least two segments");
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        maxSegments = (int) Math.min(Integer.MAX_VALUE, maxBytes / segmentBytes);
+        this.drainPerSecond = drainPerSecond;
+        this.drainBatchSize = drainBatchSize;
+        recordBuffers = new MappedByteBuffer[drainBatchSize];
+        recordPositions = new int[drainBatchSize];
+        recordNext = new int[drainBatchSize];
+        deviceFirst = new int[drainBatchSize];
+        deviceLast = new int[drainBatchSize];
+        deviceTable = new int[Integer.highestOneBit(drainBatchSize) * 4];
+        retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+        this.transport = transport;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        recover();
+        appended = Counter.builder("telemetry.spool.appended").description("Readings the platform did not take, kept to send again")
+                .register(metrics.getRegistry());
+        drained = Counter.builder("telemetry.spool.drained").description("Spooled readings the platform took after all")
+                .register(metrics.getRegistry());
+        Gauge.builder("telemetry.spool.readings", this, TelemetrySpool::getPendingReadings)
+                .description("Readings waiting in the spool").register(metrics.getRegistry());
+        drainer.scheduleWithFixedDelay(this::drain, drainIntervalMillis, drainIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public long getPendingReadings() {
+        return pendingReadings;
+    }
+
+    // the last segment the spool may use is being filled, sensors should slow down
+    public boolean isFull() {
+        return full;
+    }
+
+    public void appendReading(DeviceChannel device, int fields, long ts, double latitude, double longitude, boolean motionDetected, boolean armed, SyntheticImu imu) {
+        TelemetryBuffer reading = TelemetryEncoder.encodeReading(scratch.get().reset(), fields, ts, latitude, longitude, motionDetected, armed, imu);
+        append(READING, 1, device.getBatchKey(), reading.getBytes(), reading.getLength(), device, null);
+    }
+
+    // reading is {"ts":..,"values":{..}}
+    public void appendReading(DeviceChannel device, byte[] reading, int length) {
+        append(READING, 1, device.getBatchKey(), reading, length, device, null);
+    }
+
+    @Override
+    public void readingFailed(DeviceChannel device, byte[] message, int length) {
+        if (TelemetryEncoder.isReading(message, length)) {
+            appendReading(device, message, length);
+        } else {
+            // the platform would have stamped it on arrival, now it gets the time it failed
+            TelemetryBuffer reading = TelemetryEncoder.encodeReading(scratch.get().reset(), System.currentTimeMillis(), message, length);
+            append(READING, 1, device.getBatchKey(), reading.getBytes(), reading.getLength(), device, null);
+        }
+    }
+
+    @Override
+    public void batchFailed(Runnable done, byte[] message, int length, int readings) {
+        if (done == drainDone) {
+            synchronized (this) {
+                drainFailed = true;
+            }
+            return;
+        }
+        // the batcher's batches tell whose readings they hold
+        append(BATCH, readings, NO_KEY, message, length, null, done instanceof TelemetryBatcher.Batch batch ? batch : null);
+    }
+
+    public void close() {
+        drainer.shutdownNow();
+        synchronized (this) {
+            for (Segment segment : segments)
+                segment.buffer.force();
+        }
+    }
+
+    // the readings are of device, or of the batch's devices, or of devices not known when both are null
+    private void append(byte kind, int readings, byte[] batchKey, byte[] payload, int length, DeviceChannel device, TelemetryBatcher.Batch batch) {
+        int size = RECORD_HEADER + batchKey.length + length;
+        synchronized (this) {
+            Segment segment = writable(size);
+            if (segment != null) {
+                MappedByteBuffer buffer = segment.buffer;
+                int position = segment.writePosition;
+                buffer.put(position + 4, kind);
+                buffer.putInt(position + 5, readings);
+                buffer.putShort(position + 9, (short) batchKey.length);
+                buffer.put(position + RECORD_HEADER, batchKey);
+                buffer.put(position + RECORD_HEADER + batchKey.length, payload, 0, length);
+                // a recycled segment still holds old records after this one
+                if (position + size + 4 <= buffer.capacity())
+                    buffer.putInt(position + size, 0);
+                buffer.putInt(position, size - 4);
+                segment.writePosition = position + size;
+                pendingReadings += readings;
+                full = segments.size() >= maxSegments;
+                appended.increment(readings);
+                for (int i = 0; i < readings; i++)
+                    own(device != null ? device : batch != null ? batch.getDevice(i) : null);
+                return;
+            }
+            full = true;
+        }
+        metrics.recordDropped("spool");
+        if (eventLog.sample(EventLog.Kind.DROPPED))
+            eventLog.publish("Dropped data for " + (device != null ? device.getAccessToken() : readings + " readings") + ": the spool is full", true);
+    }
+
+    private Segment writable(int size) {
+        Segment last = segments.peekLast();
+        if (last != null && last.buffer.capacity() - last.writePosition >= size)
+            return last;
+        if (segments.size() >= maxSegments || HEADER + size > segmentBytes)
+            return null;
+        Segment next = free.isEmpty() ? createSegment() : free.poll();
+        next.clear(++sequence);
+        segments.add(next);
+        return next;
+    }
+
+    void drain() {
+        int readings;
+        synchronized (this) {
+            long now = System.nanoTime();
+            budget = Math.min(drainBatchSize, budget + (now - refilledNanos) / 1e9 * drainPerSecond);
+            refilledNanos = now;
+            // waits for a full batch unless fewer readings are left
+            if (draining || pendingReadings == 0 || now - retryAtNanos < 0 || budget < Math.min(drainBatchSize, pendingReadings))
+                return;
+            readings = collect();
+            if (readings == 0)
+                return;
+            draining = true;
+            budget -= readings;
+        }
+        try {
+            transport.sendBatch(drainBuffer, readings, drainDone);
+        } catch (Exception e) {
+            batchFailed(drainDone, drainBuffer.getBytes(), drainBuffer.getLength(), readings);
+            drainDone();
+        }
+    }
+
+    // encodes the oldest records into drainBuffer, readings of one device are grouped under its key in their order
+    private int collect() {
+        int readings = 0;
+        int records = 0;
+        devices = 0;
+        Arrays.fill(deviceTable, 0);
+        for (Segment segment : segments) {
+            MappedByteBuffer buffer = segment.buffer;
+            int position = segment.readPosition();
+            while (position < segment.writePosition) {
+                byte kind = buffer.get(position + 4);
+                int recordReadings = buffer.getInt(position + 5);
+                int end = position + 4 + buffer.getInt(position);
+                if (readings == 0 && budget < Math.min(recordReadings, drainBatchSize))
+                    return 0;
+                if (kind == BATCH) {
+                    if (readings > 0)
+                        return finishBatch(readings);
+                    int payload = position + RECORD_HEADER + buffer.getShort(position + 9);
+                    drainBuffer.reset().put(buffer, payload, end - payload);
+                    drainSegment = segment;
+                    drainPosition = end;
+                    return drainReadings = recordReadings;
+                }
+                // a reading record holds one reading, so a batch never has more records than drainBatchSize
+                if (readings + recordReadings > budget)
+                    return finishBatch(readings);
+                recordBuffers[records] = buffer;
+                recordPositions[records] = position;
+                recordNext[records] = -1;
+                group(records++);
+                readings += recordReadings;
+                drainSegment = segment;
+                drainPosition = end;
+                position = end;
+            }
+        }
+        return finishBatch(readings);
+    }
+
+    // chains the record to the earlier ones of its device, or starts a new device
+    private void group(int record) {
+        MappedByteBuffer buffer = recordBuffers[record];
+        int key = recordPositions[record] + RECORD_HEADER;
+        int keyLength = buffer.getShort(recordPositions[record] + 9);
+        int hash = 0;
+        for (int i = 0; i < keyLength; i++)
+            hash = 31 * hash + buffer.get(key + i);
+        int mask = deviceTable.length - 1;
+        for (int slot = (hash ^ hash >>> 16) & mask; ; slot = (slot + 1) & mask) {
+            int device = deviceTable[slot] - 1;
+            if (device < 0) {
+                deviceTable[slot] = devices + 1;
+                deviceFirst[devices] = deviceLast[devices] = record;
+                devices++;
+                return;
+            }
+            if (sameKey(deviceFirst[device], record)) {
+                recordNext[deviceLast[device]] = record;
+                deviceLast[device] = record;
+                return;
+            }
+        }
+    }
+
+    private boolean sameKey(int first, int second) {
+        MappedByteBuffer firstBuffer = recordBuffers[first];
+        MappedByteBuffer secondBuffer = recordBuffers[second];
+        int firstKey = recordPositions[first] + RECORD_HEADER;
+        int secondKey = recordPositions[second] + RECORD_HEADER;
+        int keyLength = firstBuffer.getShort(recordPositions[first] + 9);
+        if (keyLength != secondBuffer.getShort(recordPositions[second] + 9))
+            return false;
+        for (int i = 0; i < keyLength; i++) {
+            if (firstBuffer.get(firstKey + i) != secondBuffer.get(secondKey + i))
+                return false;
+        }
+        return true;
+    }
+
+    private int finishBatch(int readings) {
+        drainBuffer.reset().put((byte) '{');
+        for (int device = 0; device < devices; device++) {
+            if (device > 0)
+                drainBuffer.put((byte) ',');
+            for (int record = deviceFirst[device]; record >= 0; record = recordNext[record]) {
+                MappedByteBuffer buffer = recordBuffers[record];
+                int position = recordPositions[record];
+                int keyLength = buffer.getShort(position + 9);
+                int payload = position + RECORD_HEADER + keyLength;
+                if (record == deviceFirst[device])
+                    drainBuffer.put(buffer, position + RECORD_HEADER, keyLength);
+                else
+                    drainBuffer.put((byte) ',');
+                drainBuffer.put(buffer, payload, position + 4 + buffer.getInt(position) - payload);
+            }
+            drainBuffer.put((byte) ']');
+        }
+        drainBuffer.put((byte) '}');
+        return drainReadings = readings;
+    }
+
+    private synchronized void drainDone() {
+        draining = false;
+        if (drainFailed) {
+            drainFailed = false;
+            retryAtNanos = System.nanoTime() + retryNanos;
+            return;
+        }
+        // everything before the last drained record was delivered with it
+        while (segments.peekFirst() != drainSegment)
+            recycle(segments.poll());
+        drainSegment.setReadPosition(drainPosition);
+        if (drainPosition >= drainSegment.writePosition) {
+            if (segments.size() > 1)
+                recycle(segments.poll());
+            else
+                drainSegment.clear(++sequence);
+        }
+        pendingReadings -= drainReadings;
+        drained.increment(drainReadings);
+        full = segments.size() >= maxSegments;
+        for (int i = 0; i < drainReadings; i++)
+            disown();
+    }
+
+    private void own(DeviceChannel owner) {
+        if (ownersSize == owners.length) {
+            DeviceChannel[] grown = new DeviceChannel[owners.length * 2];
+            for (int i = 0; i < ownersSize; i++)
+                grown[i] = owners[(ownersHead + i) & (owners.length - 1)];
+            owners = grown;
+            ownersHead = 0;
+        }
+        owners[(ownersHead + ownersSize++) & (owners.length - 1)] = owner;
+        if (owner != null)
+            owner.addSpooled(1);
+    }
+
+    // the oldest reading was delivered
+    private void disown() {
+        if (recoveredReadings > 0) {
+            recoveredReadings--;
+            return;
+        }
+        DeviceChannel owner = owners[ownersHead];
+        owners[ownersHead] = null;
+        ownersHead = (ownersHead + 1) & (owners.length - 1);
+        ownersSize--;
+        if (owner != null)
+            owner.addSpooled(-1);
+    }
+
+    private void recycle(Segment segment) {
+        segment.clear(0);
+        free.add(segment);
+    }
+
+    private void recover() {
+        List<Segment> found = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "spool-*.seg")) {
+                for (Path file : files)
+                    found.add(new Segment(file, segmentBytes));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open spool " + directory, e);
+        }
+        found.sort(Comparator.comparingLong(Segment::sequence));
+        for (Segment segment : found) {
+            long readings = segment.scan();
+            if (readings == 0) {
+                free.add(segment);
+            } else {
+                segments.add(segment);
+                pendingReadings += readings;
+                sequence = Math.max(sequence, segment.sequence());
+            }
+        }
+        full = segments.size() >= maxSegments;
+        recoveredReadings = pendingReadings;
+        if (pendingReadings > 0)
+            eventLog.info(EventLog.Kind.SYSTEM, "Spool " + directory + " holds " + pendingReadings + " readings from the last run");
+    }
+
+    private Segment createSegment() {
+        for (int index = 0; ; index++) {
+            Path file = directory.resolve("spool-" + index + ".seg");
+            if (Files.exists(file))
+                continue;
+            try {
+                return new Segment(file, segmentBytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create spool segment " + file, e);
+            }
+        }
+    }
+
+    private static class Segment {
+        final MappedByteBuffer buffer;
+        int writePosition = HEADER;
+
+        Segment(Path file, int segmentBytes) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // a segment written with another size keeps it
+                long size = channel.size() > HEADER ? channel.size() : segmentBytes;
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            if (buffer.getInt(0) != MAGIC)
+                clear(0);
+        }
+
+        long sequence() {
+            return buffer.getLong(SEQUENCE);
+        }
+
+        int readPosition() {
+            return buffer.getInt(READ_POSITION);
+        }
+
+        void setReadPosition(int position) {
+            buffer.putInt(READ_POSITION, position);
+        }
+
+        void clear(long sequence) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(READ_POSITION, HEADER);
+            buffer.putLong(SEQUENCE, sequence);
+            buffer.putInt(HEADER, 0);
+            writePosition = HEADER;
+        }
+
+        // finds the end of the records and returns the readings not drained yet
+        long scan() {
+            int position = HEADER;
+            int read = readPosition();
+            long readings = 0;
+            while (position + 4 <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length < RECORD_HEADER - 4 || position + 4L + length > buffer.capacity())
+                    break;
+                if (position >= read)
+                    readings += buffer.getInt(position + 5);
+                position += 4 + length;
+            }
+            writePosition = position;
+            if (read >= HEADER && read <= position)
+                return readings;
+            setReadPosition(HEADER);
+            return scan();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.virtual_device.services;
+
+// sees every reading the fleet emits, on the sending sensor's tick so each sensor's readings arrive in order,
+// fields are the TelemetryEncoder fields the reading carries
+public interface TelemetryStage {
+
+    void accept(String accessToken, int fields, long timestamp, double latitude, double longitude, boolean motionDetected, boolean armed);
+}
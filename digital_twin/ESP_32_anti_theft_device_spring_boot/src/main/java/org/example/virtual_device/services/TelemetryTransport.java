@@ -0,0 +1,45 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+
+import java.util.function.BiPredicate;
+
+public interface TelemetryTransport {
+
+    // payload is one of the device's buffers, the transport hands it back with device.release(payload)
+    // as soon as it no longer reads it
+    void send(DeviceChannel device, TelemetryBuffer payload);
+
+    // batch is {token: [{ts, values}], ...}, done is run once the platform answered or the send failed,
+    // a failure is reported to the failure handler before
+    void sendBatch(TelemetryBuffer batch, int readings, Runnable done);
+
+    // transports that can only send one device per message return false and are never given batches
+    default boolean supportsBatches() {
+        return true;
+    }
+
+    // lets transports that keep a connection per device open it before the first reading
+    default void register(String accessToken) {
+    }
+
+    // rpcHandler is called with the token and the RPC method and returns whether the method was handled
+    default void setRpcHandler(BiPredicate<String, String> rpcHandler) {
+    }
+
+    // told about telemetry the platform did not take, for spooling it
+    default void setFailureHandler(FailureHandler failureHandler) {
+    }
+
+    default void shutdown() {
+    }
+
+    // message is what was sent and only valid during the call
+    interface FailureHandler {
+        void readingFailed(DeviceChannel device, byte[] message, int length);
+
+        // done is the one given to sendBatch
+        void batchFailed(Runnable done, byte[] message, int length, int readings);
+    }
+}
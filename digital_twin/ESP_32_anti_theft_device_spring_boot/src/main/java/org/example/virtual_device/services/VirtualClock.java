@@ -0,0 +1,213 @@
+package org.example.virtual_device.services;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+// as fast as possible: one driver thread runs the tasks in simulated-time order and jumps the clock straight
+// to the next one, so a day of fleet traffic takes as long as sending it does
+public class VirtualClock implements SimulationClock {
+
+    // the driver waits while this says the sink is behind, instead of running ahead and dropping readings
+    public interface Backpressure {
+        boolean isSaturated();
+    }
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private final long startMillis = System.currentTimeMillis();
+    private final Backpressure backpressure;
+    private final EventLog eventLog;
+    private final Thread driver;
+    private volatile long now; // simulated milliseconds since start, only the driver moves it
+    private long sequence;
+    private int cancelledTasks; // still in the queue, skipped when their time comes
+    private volatile boolean running = true;
+
+    public VirtualClock(Backpressure backpressure, EventLog eventLog) {
+        this.backpressure = backpressure;
+        this.eventLog = eventLog;
+        driver = new Thread(this::drive, "fleet-virtual");
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return startMillis + now;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now * 1_000_000;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        return add(new Task(task, now + initialDelayMillis, periodMillis));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return add(new Task(task, now + delayMillis, 0));
+    }
+
+    @Override
+    public synchronized int getQueuedTasks() {
+        return queue.size() - cancelledTasks;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        driver.interrupt();
+    }
+
+    private synchronized Task add(Task task) {
+        task.sequence = sequence++;
+        task.queued = true;
+        queue.add(task);
+        notifyAll();
+        return task;
+    }
+
+    private void drive() {
+        while (running) {
+            Task task;
+            synchronized (this) {
+                // cancelled tasks are skipped here rather than searched for and removed on cancel
+                while ((task = queue.poll()) == null || task.cancelled) {
+                    if (task != null) {
+                        task.queued = false;
+                        cancelledTasks--;
+                        continue;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task.queued = false;
+                if (task.time > now)
+                    now = task.time;
+            }
+            while (backpressure.isSaturated() && running)
+                LockSupport.parkNanos(100_000);
+            RuntimeException failure = null;
+            try {
+                task.task.run();
+            } catch (RuntimeException e) {
+                failure = e;
+                eventLog.error(EventLog.Kind.SYSTEM, "Virtual clock task failed: " + e.getMessage());
+            }
+            synchronized (this) {
+                if (task.period > 0 && !task.cancelled) {
+                    task.time += task.period;
+                    add(task);
+                } else {
+                    task.failure = failure;
+                    task.done = true;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // a stopped fleet leaves its ticks behind, they are dropped at once when they are most of the queue
+    private void cancelled(Task task) {
+        if (task.queued && ++cancelledTasks > queue.size() / 2) {
+            queue.removeIf(queued -> queued.cancelled);
+            cancelledTasks = 0;
+        }
+        notifyAll();
+    }
+
+    private class Task implements ScheduledFuture<Object> {
+        final Runnable task;
+        final long period;
+        long time;
+        long sequence;
+        boolean queued; // guarded by the clock
+        volatile boolean cancelled;
+        volatile boolean done;
+        RuntimeException failure;
+
+        Task(Runnable task, long time, long period) {
+            this.task = task;
+            this.time = time;
+            this.period = period;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task that = (Task) other;
+            int byTime = Long.compare(time, that.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, that.sequence);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (VirtualClock.this) {
+                if (done || cancelled)
+                    return false;
+                cancelled = true;
+                cancelled(this);
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            synchronized (VirtualClock.this) {
+                while (!isDone())
+                    VirtualClock.this.wait();
+            }
+            return result();
+        }
+
+        // the timeout is wall-clock time, however fast the simulated time runs
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (VirtualClock.this) {
+                while (!isDone()) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0)
+                        throw new TimeoutException("Virtual clock task still pending after " + timeout + " " + unit);
+                    TimeUnit.NANOSECONDS.timedWait(VirtualClock.this, left);
+                }
+            }
+            return result();
+        }
+
+        private Object result() throws ExecutionException {
+            if (cancelled)
+                throw new CancellationException("Virtual clock task was cancelled");
+            if (failure != null)
+                throw new ExecutionException(failure);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.virtual_device.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeofenceIndexTests {
+
+    @Test
+    void containsCirclesAndPolygons() {
+        Geofence circle = Geofence.circle("home", 45.8, 15.96, 100);
+        assertTrue(circle.contains(45.8, 15.96));
+        assertTrue(circle.contains(45.8 + 90 / 111_195.0, 15.96));
+        assertFalse(circle.contains(45.8 + 110 / 111_195.0, 15.96));
+
+        // an L, the notch is outside
+        Geofence polygon = Geofence.polygon("yard", new double[]{0, 0, 1, 1, 2, 2}, new double[]{0, 2, 2, 1, 1, 0});
+        assertTrue(polygon.contains(0.5, 1.5));
+        assertTrue(polygon.contains(1.5, 0.5));
+        assertFalse(polygon.contains(1.5, 1.5));
+        assertFalse(polygon.contains(-0.5, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> Geofence.polygon("line", new double[]{0, 1}, new double[]{0, 1}));
+        assertThrows(IllegalArgumentException.class, () -> Geofence.circle("dot", 0, 0, 0));
+    }
+
+    @Test
+    void findsTheSameZonesAsAScan() {
+        SplittableRandom random = new SplittableRandom(1);
+        List<Geofence> zones = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            double latitude = 45.7 + 0.2 * random.nextDouble();
+            double longitude = 15.8 + 0.3 * random.nextDouble();
+            double size = 0.001 + 0.01 * random.nextDouble();
+            zones.add(i % 2 == 0 ? Geofence.circle("c" + i, latitude, longitude, size * 50_000)
+                    : Geofence.polygon("p" + i, new double[]{latitude, latitude, latitude + size}, new double[]{longitude, longitude + size, longitude}));
+        }
+        for (GeofenceIndex index : List.of(new GeofenceIndex(zones, 0.01, 1 << 20), new GeofenceIndex(zones, 0.0001, 64))) {
+            for (int i = 0; i < 20_000; i++) {
+                double latitude = 45.65 + 0.3 * random.nextDouble();
+                double longitude = 15.75 + 0.4 * random.nextDouble();
+                int found = index.find(latitude, longitude);
+                boolean inside = zones.stream().anyMatch(zone -> zone.contains(latitude, longitude));
+                assertEquals(inside, found >= 0);
+                if (found >= 0)
+                    assertTrue(index.contains(found, latitude, longitude));
+            }
+        }
+    }
+
+    @Test
+    void findsNothingWithoutZones() {
+        assertEquals(-1, new GeofenceIndex(List.of(), 0.01, 16).find(45.8, 15.96));
+    }
+}
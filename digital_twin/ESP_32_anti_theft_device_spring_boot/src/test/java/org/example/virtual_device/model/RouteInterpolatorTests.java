@@ -0,0 +1,54 @@
+package org.example.virtual_device.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteInterpolatorTests {
+
+    // three points on the equator, one degree apart
+    private final RouteInterpolator interpolator = new RouteInterpolator(new double[]{0, 0, 0}, new double[]{0, 1, 2});
+    private final double degree = GreatCircle.distanceMeters(0, 0, 0, 1);
+
+    @Test
+    void measuresAlongTheGreatCircle() {
+        assertEquals(111_195, degree, 1);
+        assertEquals(2 * degree, interpolator.getLength(), 1e-6);
+        assertEquals(0, interpolator.segment(0));
+        assertEquals(1, interpolator.segment(1.5 * degree));
+        assertEquals(1, interpolator.segment(3 * degree));
+    }
+
+    @Test
+    void interpolatesBetweenPoints() {
+        RouteCursor cursor = interpolator.cursor(RouteEnd.STOP);
+        cursor.advance(0.25 * degree);
+        assertEquals(0, cursor.getLatitude(), 1e-9);
+        assertEquals(0.25, cursor.getLongitude(), 1e-9);
+        cursor.advance(degree);
+        assertEquals(1.25, cursor.getLongitude(), 1e-9);
+    }
+
+    @Test
+    void handlesTheEndOfTheRoute() {
+        RouteCursor stop = interpolator.cursor(RouteEnd.STOP);
+        stop.advance(2.5 * degree);
+        assertEquals(2, stop.getLongitude(), 1e-9);
+
+        RouteCursor loop = interpolator.cursor(RouteEnd.LOOP);
+        loop.advance(2.5 * degree);
+        assertEquals(0.5, loop.getLongitude(), 1e-9);
+
+        RouteCursor reverse = interpolator.cursor(RouteEnd.REVERSE);
+        reverse.advance(2.5 * degree);
+        assertEquals(1.5, reverse.getLongitude(), 1e-9);
+        reverse.advance(2 * degree);
+        assertEquals(0.5, reverse.getLongitude(), 1e-9);
+    }
+
+    @Test
+    void parsesRouteEnds() {
+        assertEquals(RouteEnd.REVERSE, RouteEnd.parse("Reverse"));
+        assertThrows(IllegalArgumentException.class, () -> RouteEnd.parse("bounce"));
+    }
+}
@@ -0,0 +1,77 @@
+package org.example.virtual_device.model;
+
+import org.example.virtual_device.bean.ScenarioRunner;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScenarioTests {
+
+    @Test
+    void readsBundledScenario() {
+        Scenario scenario = ScenarioRunner.loadScenario("classpath:scenarios/smoke.json");
+        assertEquals(1000, scenario.getFleetSize());
+        FleetSettings settings = scenario.toFleetSettings();
+        SplittableRandom random = new SplittableRandom(1);
+        assertEquals(5000, settings.getSendIntervalMillis());
+        for (int i = 0; i < 1000; i++) {
+            long wakeup = settings.nextWakeupMillis(random);
+            assertTrue(wakeup >= 15000 && wakeup < 20000, "wakeup " + wakeup);
+        }
+    }
+
+    @Test
+    void exponentialWakeupStaysWithinBounds() {
+        Scenario scenario = new Scenario();
+        scenario.setDurationSeconds(10);
+        scenario.getWakeup().setDistribution("Exponential");
+        scenario.getWakeup().setMinSeconds(1);
+        scenario.getWakeup().setMaxSeconds(30);
+        scenario.getWakeup().setMeanSeconds(5);
+        scenario.validate();
+        FleetSettings settings = scenario.toFleetSettings();
+        SplittableRandom random = new SplittableRandom(1);
+        double sum = 0;
+        for (int i = 0; i < 10000; i++) {
+            long wakeup = settings.nextWakeupMillis(random);
+            assertTrue(wakeup >= 1000 && wakeup <= 30000, "wakeup " + wakeup);
+            sum += wakeup;
+        }
+        assertEquals(5000, sum / 10000, 300);
+    }
+
+    @Test
+    void sameSeedGivesSameWakeups() {
+        Scenario scenario = new Scenario();
+        scenario.setSeed(42L);
+        FleetSettings first = scenario.toFleetSettings();
+        FleetSettings second = scenario.toFleetSettings();
+        assertEquals(42L, first.getSeed());
+        SplittableRandom firstRandom = new SplittableRandom(first.getSeed());
+        SplittableRandom secondRandom = new SplittableRandom(second.getSeed());
+        for (int i = 0; i < 100; i++)
+            assertEquals(first.nextWakeupMillis(firstRandom), second.nextWakeupMillis(secondRandom));
+    }
+
+    @Test
+    void rejectsInvalidScenarios() {
+        Scenario scenario = new Scenario();
+        assertThrows(IllegalArgumentException.class, scenario::validate); // no duration
+        scenario.setDurationSeconds(10);
+        scenario.setArmRatio(1.5);
+        assertThrows(IllegalArgumentException.class, scenario::validate);
+        scenario.setArmRatio(0.5);
+        scenario.getWakeup().setDistribution("gaussian");
+        assertThrows(IllegalArgumentException.class, scenario::validate);
+        scenario.getWakeup().setDistribution("uniform");
+        scenario.validate();
+        // positive, but no time at all once in milliseconds
+        scenario.setSendIntervalSeconds(0.0004);
+        assertThrows(IllegalArgumentException.class, scenario::validate);
+        scenario.setSendIntervalSeconds(0.001);
+        scenario.setHeartbeatSeconds(0.0001);
+        assertThrows(IllegalArgumentException.class, scenario::validate);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.virtual_device.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntheticImuTests {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void staysQuietAtRest() {
+        SyntheticImu imu = new SyntheticImu(100, 1.85, new SplittableRandom(1));
+        imu.advance(0);
+        for (long t = 1; t <= 60; t++)
+            assertFalse(imu.advance(t * 5 * SECOND));
+        assertEquals(500, imu.getWindowSamples());
+        assertEquals(30_001, imu.getSamples());
+        assertTrue(imu.getWindowMax() < 0.2);
+        assertTrue(imu.getWindowMin() <= imu.getWindowRms() && imu.getWindowRms() <= imu.getWindowMax());
+        assertEquals(1, imu.getAccelZ(0), 0.1);
+        assertEquals(0, imu.getGyroX(SyntheticImu.CAPACITY - 1), 2);
+        assertThrows(IllegalArgumentException.class, () -> imu.getAccelX(SyntheticImu.CAPACITY));
+    }
+
+    @Test
+    void alertsWhenMoved() {
+        SyntheticImu imu = new SyntheticImu(100, 1.85, new SplittableRandom(2));
+        imu.advance(0);
+        imu.startMovement(7 * SECOND + 3_000_000);
+        assertFalse(imu.advance(5 * SECOND));
+        assertTrue(imu.advance(10 * SECOND));
+        assertTrue(imu.getWindowMax() > 1.85);
+        // the jolt dies out, driving keeps the alert latched without getting near the threshold again
+        assertTrue(imu.advance(15 * SECOND));
+        assertTrue(imu.getWindowMax() < 1);
+        assertTrue(imu.getWindowRms() > 0.1);
+    }
+
+    @Test
+    void samplesTheSameWithTheSameSeed() {
+        SyntheticImu first = new SyntheticImu(50, 1.85, new SplittableRandom(3));
+        SyntheticImu second = new SyntheticImu(50, 1.85, new SplittableRandom(3));
+        for (SyntheticImu imu : new SyntheticImu[]{first, second}) {
+            imu.advance(0);
+            imu.startMovement(SECOND);
+            imu.advance(3 * SECOND);
+        }
+        assertEquals(151, first.getSamples());
+        assertEquals(first.getWindowRms(), second.getWindowRms());
+        assertEquals(first.getGyroZ(10), second.getGyroZ(10));
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.virtual_device.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenRangeTests {
+
+    @Test
+    void keepsZeroPadding() {
+        TokenRange range = TokenRange.parse("dev-00000..dev-49999", 1_000_000);
+        assertEquals(50_000, range.size());
+        assertEquals("dev-00000", range.get(0));
+        assertEquals("dev-00042", range.get(42));
+        assertEquals("dev-49999", range.get(49_999));
+    }
+
+    @Test
+    void unpaddedRangeGrowsInWidth() {
+        assertEquals(List.of("s8", "s9", "s10", "s11"), TokenRange.parse("s8..s11", 100));
+    }
+
+    @Test
+    void rejectsInvalidRanges() {
+        assertThrows(IllegalArgumentException.class, () -> TokenRange.parse("dev-1", 100));
+        assertThrows(IllegalArgumentException.class, () -> TokenRange.parse("dev-1..car-2", 100));
+        assertThrows(IllegalArgumentException.class, () -> TokenRange.parse("dev-9..dev-1", 100));
+        assertThrows(IllegalArgumentException.class, () -> TokenRange.parse("dev-0..dev-100", 100));
+    }
+}
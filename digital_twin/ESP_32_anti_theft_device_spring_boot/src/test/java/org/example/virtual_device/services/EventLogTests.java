@@ -0,0 +1,68 @@
+package org.example.virtual_device.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTests {
+
+    @Test
+    void showsOnlyTheSampleBudgetAndCountsTheRest() {
+        EventLog log = new EventLog(16, 2);
+        for (int i = 0; i < 5; i++)
+            log.info(EventLog.Kind.SENT, "sent " + i);
+        log.error(EventLog.Kind.FAILED, "failed");
+
+        List<EventLog.Line> lines = new ArrayList<>();
+        assertEquals(3, log.drainTo(lines, 100));
+        assertEquals(List.of(new EventLog.Line("sent 0", false), new EventLog.Line("sent 1", false), new EventLog.Line("failed", true)), lines);
+        assertEquals("Last 5000 ms: 5 sent, 1 failed (3 lines not shown)", log.closeInterval(5000).text());
+
+        // a new interval has a new budget
+        log.info(EventLog.Kind.SENT, "sent again");
+        assertEquals(1, log.drainTo(lines, 100));
+        assertNull(log.closeInterval(5000));
+    }
+
+    @Test
+    void countsLinesThatDoNotFitTheRing() {
+        EventLog log = new EventLog(4, 100);
+        for (int i = 0; i < 6; i++)
+            log.info(EventLog.Kind.SENSOR, "line " + i);
+
+        List<EventLog.Line> lines = new ArrayList<>();
+        assertEquals(4, log.drainTo(lines, 100));
+        assertEquals("line 3", lines.get(3).text());
+        assertEquals("Last 5000 ms: 6 sensor events (2 lines not shown)", log.closeInterval(5000).text());
+
+        // drained slots are reused
+        log.info(EventLog.Kind.SENSOR, "line 6");
+        assertEquals(1, log.drainTo(lines, 100));
+        assertEquals("line 6", lines.get(4).text());
+    }
+
+    @Test
+    void flushWaitsForTheDrainerToHandOverTheLines() {
+        EventLog log = new EventLog(16, 100);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        log.setSink(lines -> {
+            threads.add(Thread.currentThread().getName());
+            lines.forEach(line -> received.add(line.text()));
+        });
+        log.start();
+        try {
+            log.info(EventLog.Kind.SYSTEM, "first");
+            log.publish("second", false);
+            log.flush();
+            assertEquals(List.of("first", "second"), received);
+            assertEquals(List.of("event-log"), threads.stream().distinct().toList());
+        } finally {
+            log.shutdown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FleetEngineTests {
+
+    private final EventLog eventLog = new EventLog();
+    private final FleetMetrics metrics = new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry());
+    private final FleetEngine fleetEngine = new FleetEngine(new CommunicationService(new TelemetryTransport() {
+        @Override
+        public void send(DeviceChannel device, TelemetryBuffer payload) {
+        }
+
+        @Override
+        public void sendBatch(TelemetryBuffer batch, int readings, Runnable done) {
+        }
+    }, metrics, eventLog), new RouteService(List.of("zagrepcanka-filozofski.txt"), List.of(), eventLog), metrics, eventLog);
+
+    @AfterEach
+    void shutdown() {
+        fleetEngine.shutdown();
+    }
+
+    @Test
+    void ticksEverySensorOnTheSharedThreads() throws InterruptedException {
+        int sensors = 200;
+        AtomicIntegerArray ticks = new AtomicIntegerArray(sensors);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch tickedTwice = new CountDownLatch(sensors);
+        for (int i = 0; i < sensors; i++) {
+            int sensor = i;
+            fleetEngine.scheduleTicks(() -> {
+                threads.add(Thread.currentThread().getName());
+                if (ticks.incrementAndGet(sensor) == 2)
+                    tickedTwice.countDown();
+            }, 20, new SplittableRandom(i));
+        }
+
+        assertTrue(tickedTwice.await(5, TimeUnit.SECONDS));
+        // a tick is out of the queue while one of the threads runs it
+        int queued = fleetEngine.getQueuedTasks();
+        assertTrue(queued <= sensors && queued >= sensors - UserVariables.fleetThreads, "queued " + queued);
+        // however many sensors there are, they share the fleet's threads
+        assertTrue(threads.size() <= UserVariables.fleetThreads, threads.toString());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("fleet-")), threads.toString());
+    }
+
+    @Test
+    void cancelledTasksLeaveTheQueueAndStopRunning() throws InterruptedException {
+        AtomicInteger ticks = new AtomicInteger();
+        CountDownLatch ticking = new CountDownLatch(1);
+        ScheduledFuture<?> tick = fleetEngine.scheduleTicks(() -> {
+            ticks.incrementAndGet();
+            ticking.countDown();
+        }, 10, new SplittableRandom(1));
+        AtomicBoolean wokeUp = new AtomicBoolean();
+        ScheduledFuture<?> wakeUp = fleetEngine.scheduleOnce(() -> wokeUp.set(true), 200);
+        assertTrue(ticking.await(5, TimeUnit.SECONDS));
+
+        tick.cancel(false);
+        wakeUp.cancel(false);
+        assertEquals(0, fleetEngine.getQueuedTasks());
+        // a tick already running when it was cancelled still finishes
+        Thread.sleep(50);
+        int cancelledAt = ticks.get();
+        Thread.sleep(300);
+        assertEquals(cancelledAt, ticks.get());
+        assertFalse(wokeUp.get());
+    }
+
+    @Test
+    void aFailingTickDoesNotStopTheSensor() throws InterruptedException {
+        CountDownLatch ticks = new CountDownLatch(3);
+        fleetEngine.scheduleTicks(() -> {
+            ticks.countDown();
+            throw new IllegalStateException("tick failed");
+        }, 10, new SplittableRandom(1));
+        assertTrue(ticks.await(5, TimeUnit.SECONDS));
+    }
+}
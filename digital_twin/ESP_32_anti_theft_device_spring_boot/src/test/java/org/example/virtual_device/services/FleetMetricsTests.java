@@ -0,0 +1,44 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FleetMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FleetMetrics metrics = new FleetMetrics(registry, new SensorRegistry());
+
+    @Test
+    void countsResponsesByStatus() {
+        long first = metrics.startSend();
+        long second = metrics.startSend();
+        assertEquals(2, registry.get("telemetry.send.inflight").gauge().value());
+        metrics.recordResponse(false, first, 200);
+        metrics.recordFailure(false, second);
+        metrics.recordResponse(true, metrics.startSend(), 503);
+
+        assertEquals(0, registry.get("telemetry.send.inflight").gauge().value());
+        assertEquals(1, registry.get("telemetry.send.responses").tag("status", "200").counter().count());
+        assertEquals(1, registry.get("telemetry.send.responses").tag("status", "503").counter().count());
+        assertEquals(1, registry.get("telemetry.send.responses").tag("status", "error").counter().count());
+        assertEquals(2, registry.get("telemetry.send.latency").tag("kind", "reading").timer().count());
+        assertEquals(1, registry.get("telemetry.send.latency").tag("kind", "batch").timer().count());
+    }
+
+    @Test
+    void recordsDropsAndTickLag() {
+        metrics.recordDropped("inflight");
+        metrics.recordDropped("inflight");
+        metrics.recordTickLag(TimeUnit.MILLISECONDS.toNanos(30));
+        // an early tick counts as on time
+        metrics.recordTickLag(-TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(2, registry.get("telemetry.dropped").tag("reason", "inflight").counter().count());
+        assertEquals(30, registry.get("fleet.tick.lag").timer().max(TimeUnit.MILLISECONDS));
+        assertEquals(0, registry.get("fleet.sensors.active").gauge().value());
+    }
+}
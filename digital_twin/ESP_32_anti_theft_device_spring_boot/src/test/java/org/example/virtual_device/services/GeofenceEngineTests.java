@@ -0,0 +1,60 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.model.Geofence;
+import org.example.virtual_device.model.GeofenceIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.virtual_device.services.TelemetryEncoder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeofenceEngineTests {
+
+    private static final double METERS_NORTH = 1 / 111_195.0;
+
+    private final List<GeofenceEngine.Alert> alerts = new ArrayList<>();
+    private final GeofenceEngine engine = new GeofenceEngine(
+            new GeofenceIndex(List.of(Geofence.circle("home", 45, 15, 100), Geofence.circle("work", 45 + 150 * METERS_NORTH, 15, 100)), 0.01, 1024),
+            new SimpleMeterRegistry(), alerts::add, new EventLog());
+
+    @Test
+    void raisesAlertsFromWhatTheReadingsCarry() {
+        engine.accept("dev-1", ALL_FIELDS, 1, 45, 15, false, true);
+        assertTrue(alerts.isEmpty());
+        engine.accept("dev-1", ALL_FIELDS, 2, 45, 15, true, true);
+        assertEquals(new GeofenceEngine.Alert(GeofenceEngine.Kind.MOVING_WHILE_ARMED, "dev-1", 2, null, 45.0, 15.0), alerts.get(0));
+        // from one zone into the overlapping next one is still safe
+        engine.accept("dev-1", LOCATION_FIELD, 3, 45 + 120 * METERS_NORTH, 15, true, true);
+        engine.accept("dev-1", LOCATION_FIELD, 4, 45 + 200 * METERS_NORTH, 15, true, true);
+        assertEquals(1, alerts.size());
+        engine.accept("dev-1", LOCATION_FIELD, 5, 45 + 300 * METERS_NORTH, 15, true, true);
+        assertEquals(GeofenceEngine.Kind.LEFT_SAFE_ZONE, alerts.get(1).kind());
+        assertEquals("work", alerts.get(1).zone());
+        engine.accept("dev-1", LOCATION_FIELD, 6, 45 + 400 * METERS_NORTH, 15, true, true);
+        assertEquals(2, alerts.size());
+        assertEquals(1, engine.getAlerts(GeofenceEngine.Kind.LEFT_SAFE_ZONE));
+    }
+
+    @Test
+    void alertsAgainOnTheNextAlarm() {
+        engine.accept("dev-1", ALL_FIELDS, 1, 45, 15, true, true);
+        engine.accept("dev-1", ARMED_FIELD, 2, 45, 15, true, false);
+        // a partial reading keeps the motion the platform last saw
+        engine.accept("dev-1", ARMED_FIELD | LOCATION_FIELD, 3, 45, 15, true, true);
+        engine.accept("dev-2", ALL_FIELDS, 3, 46, 15, true, false);
+        assertEquals(2, engine.getAlerts(GeofenceEngine.Kind.MOVING_WHILE_ARMED));
+        assertEquals(List.of(1L, 3L), alerts.stream().map(GeofenceEngine.Alert::timestamp).toList());
+    }
+
+    @Test
+    void loadsZones() {
+        List<Geofence> zones = GeofenceEngine.loadZones("classpath:geofences/zagreb.json");
+        assertEquals(2, zones.size());
+        assertTrue(zones.get(0).isCircle());
+        assertTrue(zones.get(1).contains(45.7968, 15.971));
+        assertThrows(IllegalArgumentException.class, () -> GeofenceEngine.loadZones("classpath:scenarios/smoke.json"));
+    }
+}
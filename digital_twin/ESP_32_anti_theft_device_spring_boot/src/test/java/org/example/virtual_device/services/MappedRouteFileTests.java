@@ -0,0 +1,68 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.GreatCircle;
+import org.example.virtual_device.model.RouteCursor;
+import org.example.virtual_device.model.RouteEnd;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedRouteFileTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void splitsTextRoutesOnEmptyLines() throws IOException {
+        MappedRouteFile file = map("routes.txt", "45.799331, 15.963002\r\n45.799339, 15.963538\r\n\r\n-33.5, -70.25\r\n");
+        assertEquals(2, file.getRouteCount());
+        assertPoints(file.cursor(0, RouteEnd.STOP), 45.799331, 15.963002, 45.799339, 15.963538);
+        assertPoints(file.cursor(1, RouteEnd.STOP), -33.5, -70.25);
+    }
+
+    @Test
+    void splitsCsvRoutesOnRouteColumn() throws IOException {
+        MappedRouteFile file = map("routes.csv", "route,lat,lon,ts\nbus-7,45.1,15.9,1\nbus-7,45.2,16.0,2\ntram-3,4.5e1,1.6E1,3\n");
+        assertEquals(2, file.getRouteCount());
+        assertPoints(file.cursor(0, RouteEnd.STOP), 45.1, 15.9, 45.2, 16.0);
+        assertPoints(file.cursor(1, RouteEnd.STOP), 45.0, 16.0);
+    }
+
+    @Test
+    void readsGpxTrackSegments() throws IOException {
+        MappedRouteFile file = map("routes.gpx", """
+                <gpx><trk><trkseg>
+                  <trkpt lat="45.8" lon="15.9"><ele>120</ele></trkpt>
+                  <trkpt lon='16.1' lat='45.9'/>
+                </trkseg><trkseg></trkseg><trkseg>
+                  <trkpt lat="-1.5" lon="2"/>
+                </trkseg></trk></gpx>
+                """);
+        assertEquals(2, file.getRouteCount());
+        assertPoints(file.cursor(0, RouteEnd.STOP), 45.8, 15.9, 45.9, 16.1);
+        assertPoints(file.cursor(1, RouteEnd.STOP), -1.5, 2);
+    }
+
+    private MappedRouteFile map(String name, String content) throws IOException {
+        Path path = directory.resolve(name);
+        Files.writeString(path, content);
+        return new MappedRouteFile(path, new EventLog());
+    }
+
+    // expects latitude, longitude pairs and that the cursor stays on the last point
+    private static void assertPoints(RouteCursor cursor, double... points) {
+        for (int i = 0; i < points.length; i += 2) {
+            if (i > 0)
+                cursor.advance(GreatCircle.distanceMeters(points[i - 2], points[i - 1], points[i], points[i + 1]));
+            assertEquals(points[i], cursor.getLatitude(), 1e-9);
+            assertEquals(points[i + 1], cursor.getLongitude(), 1e-9);
+        }
+        cursor.advance(1000);
+        assertEquals(points[points.length - 2], cursor.getLatitude(), 1e-9);
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.example.virtual_device.UserVariables;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MqttTelemetryTransportTests {
+
+    private static final String BROKER_URL = "tcp://localhost:18830";
+
+    private Server broker;
+    private MqttClient platform;
+    private MqttTelemetryTransport transport;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("host", "localhost");
+        properties.setProperty("port", "18830");
+        properties.setProperty("allow_anonymous", "true");
+        properties.setProperty("persistence_enabled", "false");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+
+        platform = new MqttClient(BROKER_URL, "platform", new MemoryPersistence());
+        platform.connect(new MqttConnectOptions());
+        platform.subscribe("v1/#", (topic, message) -> received.add(topic + " " + new String(message.getPayload())));
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        transport.shutdown();
+        platform.disconnect();
+        broker.stopServer();
+    }
+
+    @Test
+    void devicePublishesTelemetryAndAnswersRpc() throws Exception {
+        BlockingQueue<String> rpcs = new LinkedBlockingQueue<>();
+        transport = new MqttTelemetryTransport(BROKER_URL, 1, false, new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry()), new EventLog());
+        transport.setRpcHandler((accessToken, method) -> rpcs.add(accessToken + " " + method));
+        transport.register("dev-1");
+        awaitSubscribed();
+
+        DeviceChannel device = new DeviceChannel("dev-1", 1);
+        transport.send(device, device.acquire().put("{\"armed\":true}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, device.getInFlight());
+        assertJson("{\"armed\":true}", poll("v1/devices/me/telemetry"));
+
+        platform.publish("v1/devices/me/rpc/request/7", "{\"method\":\"armDevice\"}".getBytes(), 1, false);
+        assertEquals("dev-1 armDevice", rpcs.poll(5, TimeUnit.SECONDS));
+        assertJson("{\"armed\":true}", poll("v1/devices/me/rpc/response/7"));
+    }
+
+    @Test
+    void publishesTheClientRejectsAreNoLongerInFlight() throws Exception {
+        FleetMetrics metrics = new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry());
+        transport = new MqttTelemetryTransport(BROKER_URL, 1, true, metrics, new EventLog());
+        awaitSubscribed();
+
+        // far more than mqttMaxInflight at once, Paho rejects the publishes over its limit right away
+        byte[] reading = "{\"dev-5\":[{\"ts\":1,\"values\":{\"armed\":true}}]}".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 10 * UserVariables.mqttMaxInflight; i++)
+            transport.sendBatch(new TelemetryBuffer(64).put(reading), 1, () -> {
+            });
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (metrics.getInFlight() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    void deviceConnectionsAreNeverGivenBatches() {
+        transport = new MqttTelemetryTransport(BROKER_URL, 1, false, new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry()), new EventLog());
+        assertFalse(transport.supportsBatches());
+        assertThrows(IllegalStateException.class, () -> transport.sendBatch(new TelemetryBuffer(16), 1, () -> {
+        }));
+    }
+
+    @Test
+    void gatewayMultiplexesSensorsOverOneConnection() throws Exception {
+        BlockingQueue<String> rpcs = new LinkedBlockingQueue<>();
+        transport = new MqttTelemetryTransport(BROKER_URL, 1, true, new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry()), new EventLog());
+        transport.setRpcHandler((accessToken, method) -> rpcs.add(accessToken + " " + method));
+        awaitSubscribed();
+
+        transport.register("dev-2");
+        TelemetryBuffer batch = new TelemetryBuffer(64).put("{\"dev-2\":[{\"ts\":1,\"values\":{\"armed\":false}}]}".getBytes(StandardCharsets.UTF_8));
+        transport.sendBatch(batch, 1, () -> {
+        });
+        assertJson("{\"device\":\"dev-2\"}", poll("v1/gateway/connect"));
+        assertJson("{\"dev-2\":[{\"ts\":1,\"values\":{\"armed\":false}}]}", poll("v1/gateway/telemetry"));
+
+        platform.publish("v1/gateway/rpc", "{\"device\":\"dev-2\",\"data\":{\"id\":3,\"method\":\"disarmDevice\"}}".getBytes(), 1, false);
+        assertEquals("dev-2 disarmDevice", rpcs.poll(5, TimeUnit.SECONDS));
+        assertJson("{\"device\":\"dev-2\",\"id\":3,\"data\":{\"armed\":false}}", poll("v1/gateway/rpc {\"device\":\"dev-2\",\"id\""));
+    }
+
+    // the transport connects and subscribes asynchronously
+    private void awaitSubscribed() throws InterruptedException {
+        Thread.sleep(1000);
+    }
+
+    private void assertJson(String expected, String message) throws Exception {
+        assertNotNull(message);
+        assertEquals(objectMapper.readTree(expected), objectMapper.readTree(message.substring(message.indexOf(' ') + 1)));
+    }
+
+    private String poll(String prefix) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        String message;
+        while ((message = received.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) != null) {
+            if (message.startsWith(prefix))
+                return message;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.example.virtual_device.services.TelemetryEncoder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReportByExceptionTests {
+
+    private static final double DISTANCE = 25;
+    private static final long HEARTBEAT = 60_000;
+    private static final double METERS_NORTH = 1 / 111_195.0; // degrees of latitude
+
+    private final DeviceChannel device = new DeviceChannel("dev-1", 1);
+
+    @Test
+    void sendsOnlyWhatChanged() {
+        assertEquals("{\"motion_detected\":false,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":false}", report(0, 45, 15, false, false));
+        assertNull(report(5_000, 45, 15, false, false));
+        assertEquals("{\"motion_detected\":true}", report(10_000, 45, 15, true, false));
+        // moving without an alarm carries no location
+        assertNull(report(15_000, 45 + 100 * METERS_NORTH, 15, true, false));
+        assertEquals("{\"armed\":true,\"latitude\":45.0017986,\"longitude\":15}", report(20_000, 45 + 200 * METERS_NORTH, 15, true, true));
+        assertNull(report(25_000, 45 + 210 * METERS_NORTH, 15, true, true));
+        assertEquals("{\"latitude\":45.0022483,\"longitude\":15}", report(30_000, 45 + 250 * METERS_NORTH, 15, true, true));
+        assertEquals("{\"motion_detected\":false}", report(35_000, 45 + 250 * METERS_NORTH, 15, false, true));
+    }
+
+    @Test
+    void sendsEverythingOncePerHeartbeat() {
+        assertEquals(ALL_FIELDS, report(0, false));
+        assertEquals(0, report(HEARTBEAT - 1, false));
+        assertEquals(ALL_FIELDS, report(HEARTBEAT, false));
+        assertEquals(ARMED_FIELD, report(HEARTBEAT + 1, true));
+        assertEquals(0, report(2 * HEARTBEAT - 1, true));
+        assertEquals(ALL_FIELDS, report(2 * HEARTBEAT, true));
+    }
+
+    @Test
+    void sendsTheLocationAgainOnTheNextAlarm() {
+        report(0, 45, 15, true, true);
+        report(5_000, 45, 15, true, false);
+        assertEquals("{\"armed\":true,\"latitude\":45,\"longitude\":15}", report(10_000, 45, 15, true, true));
+    }
+
+    private int report(long ts, boolean armed) {
+        int fields = device.changedFields(ts, 45, 15, false, armed, DISTANCE, HEARTBEAT);
+        if (fields != 0)
+            device.reported(fields, ts, 45, 15, false, armed);
+        return fields;
+    }
+
+    // the values a sensor would send at ts, null if it sends nothing
+    private String report(long ts, double latitude, double longitude, boolean motionDetected, boolean armed) {
+        int fields = device.changedFields(ts, latitude, longitude, motionDetected, armed, DISTANCE, HEARTBEAT);
+        if (fields == 0)
+            return null;
+        device.reported(fields, ts, latitude, longitude, motionDetected, armed);
+        TelemetryBuffer values = encodeValues(new TelemetryBuffer(192), fields, latitude, longitude, motionDetected, armed, null);
+        return new String(values.getBytes(), 0, values.getLength(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.Route;
+import org.example.virtual_device.model.RouteCursor;
+import org.example.virtual_device.model.RouteEnd;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteServiceTests {
+
+    private final RouteService routeService = new RouteService(List.of("zagrepcanka-filozofski.txt"), List.of(), new EventLog());
+
+    @Test
+    void parsesEveryBundledRouteOnceAtStartup() {
+        assertEquals(1, routeService.getRoutes().size());
+        Route route = routeService.getRoutes().get(0);
+        assertEquals("zagrepcanka-filozofski.txt", route.getName());
+        assertTrue(route.size() > 1);
+        assertThrows(UnsupportedOperationException.class, () -> routeService.getRoutes().add(route));
+
+        // cursors are handed out on the parsed route, not on a fresh copy of the file
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 100; i++) {
+            RouteCursor cursor = routeService.newCursor(random, RouteEnd.REVERSE);
+            assertEquals(route.getLatitude(0), cursor.getLatitude());
+            assertEquals(route.getLongitude(0), cursor.getLongitude());
+        }
+        assertSame(route, routeService.getRoutes().get(0));
+    }
+
+    @Test
+    void sensorsOnTheSameRouteKeepTheirOwnPosition() {
+        Route route = routeService.getRoutes().get(0);
+        SplittableRandom random = new SplittableRandom(1);
+        RouteCursor first = routeService.newCursor(random, RouteEnd.REVERSE);
+        RouteCursor second = routeService.newCursor(random, RouteEnd.REVERSE);
+
+        first.advance(500);
+        assertNotEquals(route.getLatitude(0), first.getLatitude());
+        assertEquals(route.getLatitude(0), second.getLatitude());
+        assertEquals(route.getLongitude(0), second.getLongitude());
+
+        second.advance(200);
+        second.advance(300);
+        assertEquals(first.getLatitude(), second.getLatitude(), 1e-9);
+        assertEquals(first.getLongitude(), second.getLongitude(), 1e-9);
+    }
+
+    @Test
+    void parsesLatitudeLongitudeLines() throws IOException {
+        String file = "45.81, 15.97\n\n 45.82 ,15.98 \n";
+        Route route = RouteService.parseRoute("test", new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, route.size());
+        assertEquals(45.82, route.getLatitude(1));
+        assertEquals(15.98, route.getLongitude(1));
+    }
+
+    @Test
+    void needsARoute() {
+        assertThrows(IllegalStateException.class, () -> new RouteService(List.of(), List.of(), new EventLog()));
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.bean.Sensor;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensorServiceTests {
+
+    private static final int THREADS = 8;
+
+    private final EventLog eventLog = new EventLog();
+    private final SensorRegistry sensorRegistry = new SensorRegistry();
+    private final FleetMetrics metrics = new FleetMetrics(new SimpleMeterRegistry(), sensorRegistry);
+    private final FleetEngine fleetEngine = new FleetEngine(new CommunicationService(new TelemetryTransport() {
+        @Override
+        public void send(DeviceChannel device, TelemetryBuffer payload) {
+            device.release(payload);
+        }
+
+        @Override
+        public void sendBatch(TelemetryBuffer batch, int readings, Runnable done) {
+            done.run();
+        }
+    }, metrics, eventLog), new RouteService(List.of("zagrepcanka-filozofski.txt"), List.of(), eventLog), metrics, eventLog);
+    private final SensorService sensorService = new SensorService(fleetEngine, sensorRegistry, eventLog);
+    private final ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void shutdown() {
+        callers.shutdownNow();
+        fleetEngine.shutdown();
+    }
+
+    @Test
+    void concurrentRegistrationsOfOneTokenRegisterOneSensor() throws Exception {
+        assertEquals(1, concurrently(() -> sensorService.registerSensor("dev-1")));
+        assertEquals(1, sensorRegistry.size());
+        // one tick and one wake-up, a second start would have scheduled its own
+        awaitQueued(2);
+        assertTrue(sensorRegistry.get("dev-1").isActive());
+    }
+
+    @Test
+    void concurrentStartsAndStopsOfOneSensorApplyOnce() throws Exception {
+        assertTrue(sensorService.registerSensor("dev-1"));
+        Sensor sensor = sensorRegistry.get("dev-1");
+        for (int round = 0; round < 50; round++) {
+            assertEquals(1, concurrently(sensor::stopSensor));
+            assertFalse(sensor.isActive());
+            awaitQueued(0);
+
+            assertEquals(1, concurrently(sensor::startSensor));
+            assertTrue(sensor.isActive());
+            awaitQueued(2);
+        }
+    }
+
+    // a tick is out of the queue while it runs
+    private void awaitQueued(int tasks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (fleetEngine.getQueuedTasks() != tasks && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(tasks, fleetEngine.getQueuedTasks());
+    }
+
+    // runs call from all threads at once and returns how many of the calls returned true
+    private int concurrently(BooleanSupplier call) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(callers.submit(() -> {
+                start.await();
+                return call.getAsBoolean();
+            }));
+        }
+        start.countDown();
+        int applied = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(5, TimeUnit.SECONDS))
+                applied++;
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.virtual_device.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryBatcherTests {
+
+    private static final byte[] VALUES = "{\"armed\":true}".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Sent> sent = new LinkedBlockingQueue<>();
+    private final TelemetryTransport transport = new TelemetryTransport() {
+        @Override
+        public void send(DeviceChannel device, TelemetryBuffer payload) {
+        }
+
+        @Override
+        public void sendBatch(TelemetryBuffer batch, int readings, Runnable done) {
+            sent.add(new Sent(batch.toString(), readings, done));
+        }
+    };
+    private TelemetryBatcher batcher;
+
+    @AfterEach
+    void shutdown() {
+        if (batcher != null)
+            batcher.shutdown();
+    }
+
+    @Test
+    void sendsAFullBatchRightAway() throws Exception {
+        batcher = new TelemetryBatcher(transport, 3, 60_000, 2, new EventLog());
+        for (int i = 0; i < 3; i++)
+            assertTrue(batcher.add(new DeviceChannel("dev-" + i, 1), 1000 + i, VALUES, VALUES.length));
+
+        Sent batch = sent.poll(0, TimeUnit.MILLISECONDS);
+        assertNotNull(batch);
+        assertEquals(3, batch.readings());
+        assertEquals(objectMapper.readTree("{\"dev-0\":[{\"ts\":1000,\"values\":{\"armed\":true}}],\"dev-1\":[{\"ts\":1001,\"values\":{\"armed\":true}}],"
+                + "\"dev-2\":[{\"ts\":1002,\"values\":{\"armed\":true}}]}"), objectMapper.readTree(batch.json()));
+    }
+
+    @Test
+    void sendsALingeringBatchOnceItIsOld() throws Exception {
+        batcher = new TelemetryBatcher(transport, 500, 50, 2, new EventLog());
+        assertTrue(batcher.add(new DeviceChannel("dev-1", 1), 1000, VALUES, VALUES.length));
+
+        Sent batch = sent.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(1, batch.readings());
+        assertEquals(objectMapper.readTree("{\"dev-1\":[{\"ts\":1000,\"values\":{\"armed\":true}}]}"), objectMapper.readTree(batch.json()));
+    }
+
+    @Test
+    void aSensorsSecondReadingStartsTheNextBatch() throws Exception {
+        batcher = new TelemetryBatcher(transport, 500, 60_000, 2, new EventLog());
+        DeviceChannel first = new DeviceChannel("dev-1", 1);
+        DeviceChannel second = new DeviceChannel("dev-2", 1);
+        assertTrue(batcher.add(first, 1000, VALUES, VALUES.length));
+        assertTrue(batcher.add(second, 1000, VALUES, VALUES.length));
+        assertTrue(sent.isEmpty());
+        // a batch is a JSON object keyed by token, so a sensor can only appear in it once
+        assertTrue(batcher.add(first, 2000, VALUES, VALUES.length));
+
+        Sent batch = sent.poll(0, TimeUnit.MILLISECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.readings());
+        assertEquals(objectMapper.readTree("{\"dev-1\":[{\"ts\":1000,\"values\":{\"armed\":true}}],\"dev-2\":[{\"ts\":1000,\"values\":{\"armed\":true}}]}"),
+                objectMapper.readTree(batch.json()));
+        batcher.shutdown();
+        batch = sent.poll(0, TimeUnit.MILLISECONDS);
+        assertNotNull(batch);
+        assertEquals(objectMapper.readTree("{\"dev-1\":[{\"ts\":2000,\"values\":{\"armed\":true}}]}"), objectMapper.readTree(batch.json()));
+    }
+
+    @Test
+    void answeredBatchesGoBackToThePool() throws Exception {
+        batcher = new TelemetryBatcher(transport, 1, 60_000, 2, new EventLog());
+        assertTrue(batcher.add(new DeviceChannel("dev-1", 1), 1000, VALUES, VALUES.length));
+        assertTrue(batcher.add(new DeviceChannel("dev-2", 1), 1000, VALUES, VALUES.length));
+        // both batches are still in flight
+        assertFalse(batcher.add(new DeviceChannel("dev-3", 1), 1000, VALUES, VALUES.length));
+
+        sent.take().done().run();
+        assertTrue(batcher.add(new DeviceChannel("dev-4", 1), 1000, VALUES, VALUES.length));
+        assertFalse(batcher.add(new DeviceChannel("dev-5", 1), 1000, VALUES, VALUES.length));
+        assertEquals(objectMapper.readTree("{\"dev-2\":[{\"ts\":1000,\"values\":{\"armed\":true}}]}"), objectMapper.readTree(sent.take().json()));
+        assertEquals(objectMapper.readTree("{\"dev-4\":[{\"ts\":1000,\"values\":{\"armed\":true}}]}"), objectMapper.readTree(sent.take().json()));
+    }
+
+    private record Sent(String json, int readings, Runnable done) {
+    }
+}
@@ -0,0 +1,52 @@
+package org.example.virtual_device.services;
+
+import org.example.virtual_device.model.SyntheticImu;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryEncoderTests {
+
+    @Test
+    void encodesCoordinatesOnlyWhenArmedAndMoving() {
+        TelemetryBuffer buffer = new TelemetryBuffer(8);
+        assertEquals("{\"motion_detected\":true,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":true,\"latitude\":45.799331,\"longitude\":15.963002}",
+                TelemetryEncoder.encodeValues(buffer, 45.799331, 15.963002, true, true).toString());
+        assertEquals("{\"motion_detected\":true,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":false}",
+                TelemetryEncoder.encodeValues(buffer.reset(), 45.799331, 15.963002, true, false).toString());
+    }
+
+    @Test
+    void encodesReadingWithTimestamp() {
+        assertEquals("{\"ts\":1700000000000,\"values\":{\"motion_detected\":false,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":true}}",
+                TelemetryEncoder.encodeReading(new TelemetryBuffer(16), 1_700_000_000_000L, 0, 0, false, true).toString());
+    }
+
+    @Test
+    void encodesTheImuWindow() {
+        SyntheticImu imu = new SyntheticImu(100, 1.85, new SplittableRandom(1));
+        imu.advance(0);
+        imu.advance(5_000_000_000L);
+        String values = TelemetryEncoder.encodeValues(new TelemetryBuffer(16), 0, 0, false, true, imu).toString();
+        assertTrue(values.matches("\\{\"motion_detected\":false,\"gyro_x\":[-0-9.]+,\"gyro_y\":[-0-9.]+,\"gyro_z\":[-0-9.]+,"
+                + "\"accel_min\":[0-9.]+,\"accel_max\":[0-9.]+,\"accel_rms\":[0-9.]+,\"armed\":true}"), values);
+        assertEquals("{\"armed\":true}", TelemetryEncoder.encodeValues(new TelemetryBuffer(16), TelemetryEncoder.ARMED_FIELD, 0, 0, false, true, imu).toString());
+    }
+
+    @Test
+    void writesNumbersLikeJson() {
+        assertEquals("0", new TelemetryBuffer(4).putLong(0).toString());
+        assertEquals("-9223372036854775808", new TelemetryBuffer(4).putLong(Long.MIN_VALUE).toString());
+        assertEquals("-70.25", new TelemetryBuffer(4).putDouble(-70.25, 7).toString());
+        assertEquals("1", new TelemetryBuffer(4).putDouble(0.999999999, 7).toString());
+        assertEquals("0", new TelemetryBuffer(4).putDouble(-0.00000001, 7).toString());
+        assertEquals("0.0000001", new TelemetryBuffer(4).putDouble(0.0000001, 7).toString());
+        assertEquals("100000000000", new TelemetryBuffer(4).putDouble(1e11, 7).toString());
+        assertEquals("1.0E12", new TelemetryBuffer(4).putDouble(1e12, 7).toString());
+        assertEquals("-1.234567890125E11", new TelemetryBuffer(4).putDouble(-123456789012.5, 9).toString());
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.example.virtual_device.services.TelemetryEncoder.ALL_FIELDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryRecordingTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasRecorded() {
+        Path file = directory.resolve("run.rec");
+        try (TelemetryRecorder recorder = new TelemetryRecorder(file)) {
+            recorder.record("dev-1", ALL_FIELDS, 1_700_000_005_000L, 45.8, 15.9, true, true, null);
+            recorder.record("dev-2", ALL_FIELDS, 1_700_000_004_990L, 0, 0, false, false, null);
+            recorder.record("dev-1", ALL_FIELDS, 1_700_000_010_000L, 45.81, 15.91, true, true, null);
+            assertEquals(3, recorder.getReadings());
+        }
+
+        List<String> readings = new ArrayList<>();
+        try (TelemetryRecording recording = new TelemetryRecording(file)) {
+            while (recording.next())
+                readings.add(recording.getAccessToken() + " " + recording.getTimestamp() + " "
+                        + new String(recording.getPayload(), 0, recording.getPayloadLength()));
+        }
+        assertEquals(List.of(
+                "dev-1 1700000005000 {\"motion_detected\":true,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":true,\"latitude\":45.8,\"longitude\":15.9}",
+                "dev-2 1700000004990 {\"motion_detected\":false,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":false}",
+                "dev-1 1700000010000 {\"motion_detected\":true,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":true,\"latitude\":45.81,\"longitude\":15.91}"),
+                readings);
+    }
+
+    @Test
+    void replaysEveryRecordedReading() {
+        Path file = directory.resolve("replay.rec");
+        try (TelemetryRecorder recorder = new TelemetryRecorder(file)) {
+            for (int i = 0; i < 100; i++)
+                recorder.record("dev-" + i % 7, ALL_FIELDS, 1_700_000_000_000L + i * 100L, 45.8, 15.9, i % 2 == 0, true, null);
+        }
+        List<String> sent = new ArrayList<>();
+        TelemetryTransport transport = new TelemetryTransport() {
+            @Override
+            public void send(DeviceChannel device, TelemetryBuffer payload) {
+                sent.add(device.getAccessToken() + " " + payload);
+                device.release(payload);
+            }
+
+            @Override
+            public void sendBatch(TelemetryBuffer batch, int readings, Runnable release) {
+                release.run();
+            }
+        };
+        CommunicationService communicationService = new CommunicationService(transport, new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry()), new EventLog());
+
+        assertEquals(100, new TelemetryReplayer(communicationService).replay(file, 0));
+        assertEquals(100, sent.size());
+        assertTrue(sent.get(3).startsWith("dev-3 {\"ts\":1700000000300,\"values\":{\"motion_detected\":false"), sent.get(3));
+    }
+
+    @Test
+    void readsConcurrentlyRecordedSensorsBackInTimeOrder() throws Exception {
+        Path file = directory.resolve("threads.rec");
+        int threads = 4;
+        int readingsPerThread = 5000;
+        AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+        try (TelemetryRecorder recorder = new TelemetryRecorder(file)) {
+            List<Thread> recording = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                recording.add(new Thread(() -> {
+                    // any thread ticks any sensor, like on the fleet's pool, and every tick reads the shared clock
+                    for (int i = 0; i < readingsPerThread; i++) {
+                        long timestamp = clock.incrementAndGet();
+                        recorder.record("dev-" + timestamp % 10, ALL_FIELDS, timestamp, 45.8, 15.9, false, false, null);
+                    }
+                }));
+            }
+            for (Thread thread : recording)
+                thread.start();
+            for (Thread thread : recording)
+                thread.join();
+            assertEquals(threads * readingsPerThread, recorder.getReadings());
+        }
+
+        long last = 0;
+        Map<String, Long> lastOfDevice = new HashMap<>();
+        int read = 0;
+        try (TelemetryRecording recording = new TelemetryRecording(file)) {
+            while (recording.next()) {
+                long timestamp = recording.getTimestamp();
+                assertTrue(timestamp > last, "reading at " + timestamp + " after " + last);
+                assertEquals("dev-" + timestamp % 10, recording.getAccessToken());
+                Long previous = lastOfDevice.put(recording.getAccessToken(), timestamp);
+                assertTrue(previous == null || previous < timestamp, recording.getAccessToken() + " at " + timestamp + " after " + previous);
+                last = timestamp;
+                read++;
+            }
+        }
+        assertEquals(threads * readingsPerThread, read);
+    }
+
+    @Test
+    void rejectsOtherFiles() throws Exception {
+        Path file = Files.writeString(directory.resolve("other.txt"), "45.8, 15.9\n");
+        assertThrows(IllegalArgumentException.class, () -> new TelemetryRecording(file));
+    }
+}
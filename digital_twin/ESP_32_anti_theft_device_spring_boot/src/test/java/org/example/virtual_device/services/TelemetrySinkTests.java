@@ -0,0 +1,94 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetrySinkTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CommunicationService communicationService = new CommunicationService(new TelemetryTransport() {
+        @Override
+        public void send(DeviceChannel device, TelemetryBuffer payload) {
+        }
+
+        @Override
+        public void sendBatch(TelemetryBuffer batch, int readings, Runnable release) {
+        }
+    }, new FleetMetrics(registry, new SensorRegistry()), new EventLog());
+    private final TelemetrySink sink = new TelemetrySink(communicationService, registry);
+
+    @Test
+    void storesEncodedReadings() {
+        TelemetryBuffer values = TelemetryEncoder.encodeValues(new TelemetryBuffer(192), 45.8, 15.97, true, true);
+        TelemetryBuffer reading = TelemetryEncoder.encodeReading(new TelemetryBuffer(192), 1000, 45.9, 15.98, false, true);
+        assertEquals(1, sink.ingest("dev-1", bytes(values), System.nanoTime()));
+        assertEquals(1, sink.ingest("dev-1", bytes(reading), TelemetrySink.NOT_SENT));
+
+        List<TelemetrySink.Reading> readings = sink.getReadings("dev-1", 10);
+        assertEquals(2, readings.size());
+        assertEquals(45.8, readings.get(0).latitude());
+        assertTrue(readings.get(0).motionDetected());
+        assertEquals(1000, readings.get(1).ts());
+        assertNull(readings.get(1).latitude());
+        assertTrue(readings.get(1).armed());
+        assertEquals(1, registry.get("sink.ingest.latency").timer().count());
+    }
+
+    @Test
+    void splitsBatchesByDevice() {
+        String batch = "{\"dev-1\":[{\"ts\":1,\"values\":{\"armed\":true}},{\"ts\":2,\"values\":{\"armed\":false}}],"
+                + "\"dev-2\":[{\"ts\":3,\"values\":{\"motion_detected\":true,\"gyro\":[1,2]}}]}";
+        assertEquals(3, sink.ingestBatch(batch.getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT));
+
+        assertEquals(List.of(2L), sink.getReadings("dev-1", 1).stream().map(TelemetrySink.Reading::ts).toList());
+        assertTrue(sink.getReadings("dev-2", 10).get(0).motionDetected());
+        TelemetrySink.Stats stats = sink.getStats();
+        assertEquals(2, stats.devices());
+        assertEquals(3, stats.readings());
+    }
+
+    @Test
+    void keepsFlagsLeftOutOfAReading() {
+        sink.ingest("dev-1", "{\"ts\":1,\"values\":{\"motion_detected\":true,\"armed\":true}}".getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT);
+        sink.ingest("dev-1", "{\"ts\":2,\"values\":{\"latitude\":45.8,\"longitude\":15.9}}".getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT);
+        TelemetrySink.Reading reading = sink.getReadings("dev-1", 1).get(0);
+        assertTrue(reading.motionDetected() && reading.armed());
+        assertEquals(45.8, reading.latitude());
+    }
+
+    @Test
+    void keepsTheNewestReadings() {
+        for (int i = 0; i < 500; i++)
+            sink.ingest("dev-1", ("{\"ts\":" + i + ",\"values\":{}}").getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT);
+        List<TelemetrySink.Reading> readings = sink.getReadings("dev-1", 1000);
+        assertTrue(readings.size() < 500);
+        assertEquals(499, readings.get(readings.size() - 1).ts());
+        assertEquals(500 - readings.size(), readings.get(0).ts());
+    }
+
+    @Test
+    void rejectsOtherBodies() {
+        assertThrows(IllegalArgumentException.class, () -> sink.ingest("dev-1", "[1]".getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT));
+        assertThrows(IllegalArgumentException.class, () -> sink.ingest("dev-1", "{\"ts\":".getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT));
+        assertThrows(IllegalArgumentException.class, () -> sink.ingestBatch("{} {}".getBytes(StandardCharsets.UTF_8), TelemetrySink.NOT_SENT));
+    }
+
+    @Test
+    void deliversRpcsThroughTheHandler() {
+        communicationService.setRpcHandler((accessToken, method) -> accessToken.equals("dev-1") && method.equals("armDevice"));
+        assertTrue(sink.sendRpc("dev-1", "armDevice"));
+        assertFalse(sink.sendRpc("dev-2", "armDevice"));
+    }
+
+    private static byte[] bytes(TelemetryBuffer buffer) {
+        return Arrays.copyOf(buffer.getBytes(), buffer.getLength());
+    }
+}
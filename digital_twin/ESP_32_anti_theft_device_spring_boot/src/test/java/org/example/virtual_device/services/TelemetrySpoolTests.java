@@ -0,0 +1,169 @@
+package org.example.virtual_device.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.virtual_device.model.DeviceChannel;
+import org.example.virtual_device.model.TelemetryBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.virtual_device.services.TelemetryEncoder.ALL_FIELDS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetrySpoolTests {
+
+    @TempDir
+    Path directory;
+    private final FakeTransport transport = new FakeTransport();
+    private final FleetMetrics metrics = new FleetMetrics(new SimpleMeterRegistry(), new SensorRegistry());
+    private final List<TelemetrySpool> spools = new ArrayList<>();
+
+    @AfterEach
+    void closeSpools() {
+        spools.forEach(TelemetrySpool::close);
+    }
+
+    @Test
+    void drainsInOrderGroupedByDevice() {
+        TelemetrySpool spool = open(1024 * 1024, 3);
+        DeviceChannel first = new DeviceChannel("dev-1", 1);
+        DeviceChannel second = new DeviceChannel("dev-2", 1);
+        spool.appendReading(first, ALL_FIELDS, 1, 45.1, 15.1, true, true, null);
+        spool.appendReading(second, ALL_FIELDS, 2, 45.2, 15.2, true, false, null);
+        byte[] reading = bytes("{\"ts\":3,\"values\":{\"armed\":true}}");
+        spool.readingFailed(first, reading, reading.length);
+        byte[] batch = bytes("{\"dev-3\":[{\"ts\":4,\"values\":{}}]}");
+        spool.batchFailed(null, batch, batch.length, 1);
+        assertEquals(4, spool.getPendingReadings());
+
+        spool.drain();
+        assertEquals("{\"dev-1\":[{\"ts\":1,\"values\":{\"motion_detected\":true,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":true,"
+                + "\"latitude\":45.1,\"longitude\":15.1}},{\"ts\":3,\"values\":{\"armed\":true}}],"
+                + "\"dev-2\":[{\"ts\":2,\"values\":{\"motion_detected\":true,\"gyro_x\":12.3,\"gyro_y\":-4.5,\"gyro_z\":0.8,\"armed\":false}}]}", transport.sent.get(0));
+        spool.drain();
+        assertEquals("{\"dev-3\":[{\"ts\":4,\"values\":{}}]}", transport.sent.get(1));
+        assertEquals(0, spool.getPendingReadings());
+        spool.drain();
+        assertEquals(2, transport.sent.size());
+    }
+
+    @Test
+    void countsSpooledReadingsPerDevice() {
+        TelemetrySpool spool = open(1024 * 1024, 10);
+        DeviceChannel first = new DeviceChannel("dev-1", 1);
+        DeviceChannel second = new DeviceChannel("dev-2", 1);
+        DeviceChannel third = new DeviceChannel("dev-3", 1);
+        spool.appendReading(first, ALL_FIELDS, 1, 45, 15, false, false, null);
+        // a full batch goes out right away and fails into the spool
+        TelemetryBatcher batcher = new TelemetryBatcher(transport, 2, 3_600_000, 1, new EventLog());
+        transport.failing = true;
+        batcher.add(second, ALL_FIELDS, 2, 45, 15, false, false, null);
+        batcher.add(first, ALL_FIELDS, 3, 45, 15, false, false, null);
+        batcher.shutdown();
+        transport.failing = false;
+        assertEquals(2, first.getSpooled());
+        assertEquals(1, second.getSpooled());
+        assertEquals(0, third.getSpooled());
+
+        spool.drain();
+        assertEquals(1, first.getSpooled());
+        assertEquals(1, second.getSpooled());
+        spool.drain();
+        assertEquals(0, first.getSpooled());
+        assertEquals(0, second.getSpooled());
+    }
+
+    @Test
+    void keepsFailedBatchesUntilDelivered() {
+        TelemetrySpool spool = open(1024 * 1024, 2);
+        byte[] values = bytes("{\"armed\":true}");
+        spool.readingFailed(new DeviceChannel("dev-1", 1), values, values.length);
+        transport.failing = true;
+        spool.drain();
+        assertEquals(1, spool.getPendingReadings());
+        transport.failing = false;
+        spool.drain();
+        assertEquals(0, spool.getPendingReadings());
+        assertEquals(2, transport.sent.size());
+        assertEquals(transport.sent.get(0), transport.sent.get(1));
+        assertTrue(transport.sent.get(1).startsWith("{\"dev-1\":[{\"ts\":"));
+    }
+
+    @Test
+    void sendsWhatIsLeftAfterARestart() {
+        TelemetrySpool spool = open(1024 * 1024, 1);
+        DeviceChannel device = new DeviceChannel("dev-1", 1);
+        for (int ts = 0; ts < 3; ts++)
+            spool.appendReading(device, ALL_FIELDS, ts, 45, 15, false, false, null);
+        spool.drain();
+        spool.close();
+
+        TelemetrySpool reopened = open(1024 * 1024, 5);
+        assertEquals(2, reopened.getPendingReadings());
+        reopened.drain();
+        assertTrue(transport.sent.get(1).contains("{\"ts\":1,") && transport.sent.get(1).contains("{\"ts\":2,"));
+        assertFalse(transport.sent.get(1).contains("{\"ts\":0,"));
+    }
+
+    @Test
+    void fillsUpAndRecyclesSegments() {
+        TelemetrySpool spool = open(1024, 1000);
+        DeviceChannel device = new DeviceChannel("dev-1", 1);
+        int appended = 0;
+        while (!spool.isFull()) {
+            spool.appendReading(device, ALL_FIELDS, appended++, 45, 15, false, false, null);
+        }
+        for (int i = 0; i < 20; i++)
+            spool.appendReading(device, ALL_FIELDS, appended++, 45, 15, false, false, null);
+        long pending = spool.getPendingReadings();
+        assertTrue(pending < appended);
+        assertEquals(appended - pending, metrics.getRegistry().get("telemetry.dropped").tag("reason", "spool").counter().count());
+
+        while (spool.getPendingReadings() > 0)
+            spool.drain();
+        assertFalse(spool.isFull());
+        spool.appendReading(device, ALL_FIELDS, appended, 45, 15, false, false, null);
+        assertEquals(1, spool.getPendingReadings());
+    }
+
+    private TelemetrySpool open(int segmentBytes, int drainBatchSize) {
+        // drains only when the test calls drain(), with an unlimited rate
+        TelemetrySpool spool = new TelemetrySpool(directory, segmentBytes, 2L * segmentBytes, 1e12, drainBatchSize, 0, 3_600_000, transport, metrics, new EventLog());
+        transport.setFailureHandler(spool);
+        spools.add(spool);
+        return spool;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class FakeTransport implements TelemetryTransport {
+        final List<String> sent = new ArrayList<>();
+        boolean failing;
+        FailureHandler failureHandler;
+
+        @Override
+        public void send(DeviceChannel device, TelemetryBuffer payload) {
+            device.release(payload);
+        }
+
+        @Override
+        public void sendBatch(TelemetryBuffer batch, int readings, Runnable done) {
+            sent.add(new String(batch.getBytes(), 0, batch.getLength(), StandardCharsets.UTF_8));
+            if (failing)
+                failureHandler.batchFailed(done, batch.getBytes(), batch.getLength(), readings);
+            done.run();
+        }
+
+        @Override
+        public void setFailureHandler(FailureHandler failureHandler) {
+            this.failureHandler = failureHandler;
+        }
+    }
+}
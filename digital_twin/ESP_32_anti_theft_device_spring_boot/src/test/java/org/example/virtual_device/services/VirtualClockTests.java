@@ -0,0 +1,104 @@
+package org.example.virtual_device.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualClockTests {
+
+    private final VirtualClock clock = new VirtualClock(() -> false, new EventLog());
+
+    @AfterEach
+    void shutdown() {
+        clock.shutdown();
+    }
+
+    @Test
+    void runsTasksInSimulatedTimeOrderWithoutWaiting() throws InterruptedException {
+        List<String> events = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        long started = clock.currentTimeMillis();
+        long wallStarted = System.nanoTime();
+        // scheduled from a clock task, so the clock cannot move on between the three calls
+        clock.schedule(() -> {
+            ScheduledFuture<?> ticks = clock.scheduleAtFixedRate(() -> events.add("tick " + (clock.currentTimeMillis() - started)), 0, 5000);
+            clock.schedule(() -> events.add("wakeup " + (clock.currentTimeMillis() - started)), 17000);
+            clock.schedule(() -> {
+                ticks.cancel(false);
+                done.countDown();
+            }, 3_600_000);
+        }, 0);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - wallStarted < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(List.of("tick 0", "tick 5000", "tick 10000", "tick 15000", "wakeup 17000", "tick 20000"), events.subList(0, 6));
+        assertEquals(720, events.size() - 1); // an hour of ticks every 5 s, plus the wake-up
+        assertEquals(3_600_000_000_000L, clock.nanoTime());
+    }
+
+    @Test
+    void waitsWhileTheSinkIsSaturated() throws InterruptedException {
+        AtomicBoolean saturated = new AtomicBoolean(true);
+        VirtualClock throttled = new VirtualClock(saturated::get, new EventLog());
+        try {
+            CountDownLatch ran = new CountDownLatch(1);
+            throttled.schedule(ran::countDown, 1000);
+            assertFalse(ran.await(200, TimeUnit.MILLISECONDS));
+            saturated.set(false);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            throttled.shutdown();
+        }
+    }
+
+    @Test
+    void tasksCanBeWaitedFor() throws Exception {
+        ScheduledFuture<?> task = clock.schedule(() -> {
+        }, 60_000);
+        assertNull(task.get(5, TimeUnit.SECONDS));
+        assertTrue(task.isDone());
+
+        ScheduledFuture<?> failing = clock.schedule(() -> {
+            throw new IllegalStateException("broken");
+        }, 1000);
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, failing::get).getCause());
+
+        ScheduledFuture<?> ticks = clock.scheduleAtFixedRate(() -> {
+        }, 0, 1000);
+        assertThrows(TimeoutException.class, () -> ticks.get(50, TimeUnit.MILLISECONDS));
+        ticks.cancel(false);
+        assertThrows(CancellationException.class, ticks::get);
+    }
+
+    @Test
+    void cancelledTasksAreNotCountedAsQueued() throws InterruptedException {
+        // the driver is held in a task, so the others stay queued
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        clock.schedule(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+        }, 0);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        List<ScheduledFuture<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            tasks.add(clock.schedule(() -> {
+            }, 1000));
+        assertEquals(10, clock.getQueuedTasks());
+        tasks.get(0).cancel(false);
+        assertEquals(9, clock.getQueuedTasks());
+        assertFalse(tasks.get(0).cancel(false));
+        tasks.forEach(task -> task.cancel(false));
+        assertEquals(0, clock.getQueuedTasks());
+        release.countDown();
+    }
+}